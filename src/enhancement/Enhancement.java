@@ -19,11 +19,17 @@ import java.util.List;
 
 import dsatool.gui.Main;
 import dsatool.plugins.Plugin;
+import dsatool.resources.ResourceManager;
 import dsatool.resources.Settings;
 import dsatool.settings.BooleanSetting;
 import dsatool.settings.IntegerSetting;
 import dsatool.settings.StringChoiceSetting;
+import enhancement.education.EducationController;
+import enhancement.enhancements.CostTable;
 import enhancement.enhancements.EnhancementController;
+import enhancement.enhancements.EnhancementSettings;
+import enhancement.enhancements.RequirementPredicate;
+import jsonant.event.JSONListener;
 
 /**
  * A plugin to use AP to enhance heroes
@@ -32,6 +38,16 @@ import enhancement.enhancements.EnhancementController;
  */
 public class Enhancement extends Plugin {
 
+	private final JSONListener requirementsListener = _ -> {
+		RequirementPredicate.clearCache();
+		EducationController.clearPreconditions();
+	};
+
+	private final JSONListener settingsListener = _ -> {
+		EnhancementSettings.refresh();
+		CostTable.build();
+	};
+
 	/*
 	 * (non-Javadoc)
 	 *
@@ -61,6 +77,13 @@ public class Enhancement extends Plugin {
 				"Lehrmeisterkosten:Sonderfertigkeiten:Magisch"));
 		Settings.addSetting(new IntegerSetting("Lehrmeisterkosten Sonderfertigkeiten Klerikal (Kreuzer/AP)", 70, 0, 10000, "Steigerung",
 				"Lehrmeisterkosten:Sonderfertigkeiten:Klerikal"));
+		Settings.addSetting(new BooleanSetting("Berechnung im Hintergrund", true, "Steigerung", "Hintergrundberechnung"));
+		CostTable.build();
+		ResourceManager.getResource("settings/Einstellungen").addListener(settingsListener);
+		for (final String resource : List.of("data/Talente", "data/Zauber", "data/Sonderfertigkeiten", "data/Rituale", "data/Liturgien",
+				"data/Schamanenrituale", "data/Weiterbildung")) {
+			ResourceManager.getResource(resource).addListener(requirementsListener);
+		}
 	}
 
 	/*
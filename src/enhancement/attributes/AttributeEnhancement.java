@@ -17,11 +17,14 @@ package enhancement.attributes;
 
 import java.time.LocalDate;
 import java.util.Collection;
+import java.util.List;
 
 import dsa41basis.hero.Attribute;
-import dsa41basis.util.DSAUtil;
 import dsatool.resources.ResourceManager;
+import enhancement.enhancements.CostTable;
 import enhancement.enhancements.Enhancement;
+import enhancement.enhancements.EnhancementController;
+import enhancement.enhancements.EnhancementSettings;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.SimpleIntegerProperty;
 import jsonant.value.JSONObject;
@@ -62,7 +65,7 @@ public class AttributeEnhancement extends Enhancement {
 		fullDescription.bind(description);
 		updateDescription();
 		ap.set(getCalculatedAP(hero));
-		recalculateValid(hero);
+		recalculateValid(EnhancementController.instance.getPendingHero(hero));
 		cheaper.set(attribute.getSes() > 0);
 	}
 
@@ -86,7 +89,7 @@ public class AttributeEnhancement extends Enhancement {
 	}
 
 	@Override
-	protected boolean calculateValid(final JSONObject hero) {
+	protected boolean calculateValid(final JSONObject hero, final EnhancementSettings settings) {
 		return target.get() <= attribute.getMaximum(hero);
 	}
 
@@ -106,25 +109,35 @@ public class AttributeEnhancement extends Enhancement {
 	@Override
 	protected int getCalculatedAP(final JSONObject hero) {
 		final int SELevel = start.get() + Math.min(target.get() - start.get(), ses.get());
-		return (DSAUtil.getEnhancementCost(7, start.get(), SELevel) + DSAUtil.getEnhancementCost(8, SELevel, target.get())) * (isMiserable ? 2 : 1);
+		return (CostTable.getCost(7, start.get(), SELevel) + CostTable.getCost(8, SELevel, target.get())) * (isMiserable ? 2 : 1);
 	}
 
 	/*
 	 * (non-Javadoc)
 	 *
-	 * @see enhancement.enhancements.Enhancement#getCalculatedCost(jsonant.value.JSONObject)
+	 * @see enhancement.enhancements.Enhancement#getCalculatedCost(jsonant.value.JSONObject, enhancement.enhancements.EnhancementSettings)
 	 */
 	@Override
-	protected double getCalculatedCost(final JSONObject hero) {
+	protected double getCalculatedCost(final JSONObject hero, final EnhancementSettings settings) {
 		return 0;
 	}
 
+	@Override
+	public Collection<String> getDependencies() {
+		return List.of("Eigenschaften/" + attribute.getName(), "Vorteile", "Nachteile", "Biografie");
+	}
+
 	@Override
 	public String getInvalidReason(final JSONObject hero) {
 		if (target.get() > attribute.getMaximum(hero)) return "Eigenschaftsmaximum " + attribute.getMaximum(hero);
 		return "";
 	}
 
+	@Override
+	public Collection<String> getModifiedPaths() {
+		return List.of("Eigenschaften/" + attribute.getName());
+	}
+
 	@Override
 	public String getName() {
 		return attribute.getName();
@@ -154,8 +167,9 @@ public class AttributeEnhancement extends Enhancement {
 	public void setTarget(final int target, final JSONObject hero) {
 		this.target.set(target);
 		updateDescription();
-		recalculateValid(hero);
+		recalculateValid(EnhancementController.instance.getPendingHero(hero));
 		reset(hero);
+		EnhancementController.instance.invalidatePendingHero();
 	}
 
 	public IntegerProperty startProperty() {
@@ -198,11 +212,6 @@ public class AttributeEnhancement extends Enhancement {
 		actual.notifyListeners(null);
 	}
 
-	@Override
-	public void unapplyTemporary(final JSONObject hero) {
-		unapply(hero);
-	}
-
 	private void updateDescription() {
 		final String desc = attribute.getName() + " (" + start.get() + "->" + target.get() + ")";
 		description.set(desc);
@@ -15,7 +15,9 @@
  */
 package enhancement.attributes;
 
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import dsa41basis.hero.Attribute;
@@ -26,6 +28,7 @@ import dsatool.resources.ResourceManager;
 import dsatool.ui.IntegerSpinnerTableCell;
 import dsatool.util.ErrorLogger;
 import dsatool.util.Tuple;
+import enhancement.enhancements.DependencyGraph;
 import enhancement.enhancements.Enhancement;
 import enhancement.enhancements.EnhancementController;
 import enhancement.enhancements.EnhancementTabController;
@@ -81,12 +84,35 @@ public class AttributesController extends EnhancementTabController {
 	@FXML
 	private TableColumn<EnergyEnhancement, Boolean> energiesCheaperColumn;
 
+	private static final List<String> validityPaths = List.of("Eigenschaften", "Basiswerte", "Vorteile", "Nachteile", "Sonderfertigkeiten");
+
 	private final Set<String> alreadyEnhanced = new HashSet<>();
 
+	private JSONObject validatedHero;
+	private long validatedStamp = -1;
+
 	public AttributesController(final EnhancementController controller, final TabPane tabPane) {
 		super(tabPane);
 	}
 
+	@Override
+	public boolean enhance(final Enhancement enhancement) {
+		if (enhancement instanceof final AttributeEnhancement ae) {
+			alreadyEnhanced.add(ae.getName());
+			if (attributesTable != null) {
+				attributesTable.getItems().removeIf(item -> item.getName().equals(ae.getName()));
+			}
+			return true;
+		} else if (enhancement instanceof final EnergyEnhancement ee) {
+			alreadyEnhanced.add(ee.getName());
+			if (energiesTable != null) {
+				energiesTable.getItems().removeIf(item -> item.getName().equals(ee.getName()));
+			}
+			return true;
+		} else
+			return false;
+	}
+
 	@Override
 	protected Node getControl() {
 		return pane;
@@ -179,7 +205,7 @@ public class AttributesController extends EnhancementTabController {
 					row.getStyleClass().add("invalid");
 					final Tooltip tooltip = new Tooltip();
 					tooltip.setOnShowing(_ -> {
-						tooltip.setText(row.getItem().getInvalidReason(hero));
+						tooltip.setText(row.getItem().getInvalidReason(EnhancementController.instance.getPendingHero(hero)));
 					});
 					row.setTooltip(tooltip);
 				}
@@ -273,7 +299,7 @@ public class AttributesController extends EnhancementTabController {
 					row.getStyleClass().add("invalid");
 					final Tooltip tooltip = new Tooltip();
 					tooltip.setOnShowing(_ -> {
-						tooltip.setText(row.getItem().getInvalidReason(hero));
+						tooltip.setText(row.getItem().getInvalidReason(EnhancementController.instance.getPendingHero(hero)));
 					});
 					row.setTooltip(tooltip);
 				}
@@ -306,11 +332,43 @@ public class AttributesController extends EnhancementTabController {
 		}
 	}
 
+	@Override
+	public void recalculate(final JSONObject hero, final Collection<String> touched) {
+		for (final AttributeEnhancement enhancement : attributesTable.getItems()) {
+			if (DependencyGraph.intersects(touched, enhancement.getDependencies())) {
+				enhancement.reset(hero);
+			}
+		}
+		for (final EnergyEnhancement enhancement : energiesTable.getItems()) {
+			if (DependencyGraph.intersects(touched, enhancement.getDependencies())) {
+				enhancement.reset(hero);
+			}
+		}
+	}
+
 	@Override
 	public void recalculateValid(final JSONObject hero) {
+		final long stamp = EnhancementController.instance.getStamp(this.hero, validityPaths);
+		if (stamp >= 0 && stamp == validatedStamp && hero == validatedHero) return;
+		validatedHero = hero;
+		validatedStamp = stamp;
 		update();
 	}
 
+	@Override
+	public void recalculateValid(final JSONObject hero, final Collection<String> touched) {
+		boolean affected = false;
+		for (final AttributeEnhancement enhancement : attributesTable.getItems()) {
+			affected |= DependencyGraph.intersects(touched, enhancement.getDependencies());
+		}
+		for (final EnergyEnhancement enhancement : energiesTable.getItems()) {
+			affected |= DependencyGraph.intersects(touched, enhancement.getDependencies());
+		}
+		if (affected) {
+			recalculateValid(hero);
+		}
+	}
+
 	@Override
 	protected void registerListeners() {
 		hero.getObj("Eigenschaften").addListener(heroListener);
@@ -335,6 +393,7 @@ public class AttributesController extends EnhancementTabController {
 	@Override
 	public void setHero(final JSONObject hero) {
 		alreadyEnhanced.clear();
+		validatedHero = null;
 		super.setHero(hero);
 	}
 
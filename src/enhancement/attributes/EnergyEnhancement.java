@@ -17,11 +17,14 @@ package enhancement.attributes;
 
 import java.time.LocalDate;
 import java.util.Collection;
+import java.util.List;
 
 import dsa41basis.hero.Energy;
-import dsa41basis.util.DSAUtil;
 import dsatool.resources.ResourceManager;
+import enhancement.enhancements.CostTable;
 import enhancement.enhancements.Enhancement;
+import enhancement.enhancements.EnhancementController;
+import enhancement.enhancements.EnhancementSettings;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.SimpleIntegerProperty;
 import jsonant.value.JSONObject;
@@ -59,7 +62,7 @@ public class EnergyEnhancement extends Enhancement {
 		fullDescription.bind(description);
 		updateDescription();
 		ap.set(getCalculatedAP(hero));
-		recalculateValid(hero);
+		recalculateValid(EnhancementController.instance.getPendingHero(hero));
 		cheaper.set(energy.getSes() > 0);
 	}
 
@@ -83,7 +86,7 @@ public class EnergyEnhancement extends Enhancement {
 	}
 
 	@Override
-	protected boolean calculateValid(final JSONObject hero) {
+	protected boolean calculateValid(final JSONObject hero, final EnhancementSettings settings) {
 		return target.getValue() <= energy.getMaximum(hero);
 	}
 
@@ -103,26 +106,36 @@ public class EnergyEnhancement extends Enhancement {
 	@Override
 	protected int getCalculatedAP(final JSONObject hero) {
 		final int SELevel = energy.getBought() + Math.min(target.getValue() - energy.getBought(), ses.get());
-		return DSAUtil.getEnhancementCost(energy.getEnhancementComplexity(hero, SELevel) - 1, energy.getBought(), SELevel)
-				+ DSAUtil.getEnhancementCost(energy.getEnhancementComplexity(hero, target.getValue()), SELevel, target.getValue());
+		return CostTable.getCost(energy.getEnhancementComplexity(hero, SELevel) - 1, energy.getBought(), SELevel)
+				+ CostTable.getCost(energy.getEnhancementComplexity(hero, target.getValue()), SELevel, target.getValue());
 	}
 
 	/*
 	 * (non-Javadoc)
 	 *
-	 * @see enhancement.enhancements.Enhancement#getCalculatedCost(jsonant.value.JSONObject)
+	 * @see enhancement.enhancements.Enhancement#getCalculatedCost(jsonant.value.JSONObject, enhancement.enhancements.EnhancementSettings)
 	 */
 	@Override
-	protected double getCalculatedCost(final JSONObject hero) {
+	protected double getCalculatedCost(final JSONObject hero, final EnhancementSettings settings) {
 		return 0;
 	}
 
+	@Override
+	public Collection<String> getDependencies() {
+		return List.of("Basiswerte/" + energy.getName(), "Eigenschaften", "Vorteile", "Nachteile", "Biografie");
+	}
+
 	@Override
 	public String getInvalidReason(final JSONObject hero) {
 		if (target.get() > energy.getMaximum(hero)) return "Maximale Steigerung " + (energy.getValue() - energy.getBought() + energy.getMaximum(hero));
 		return "";
 	}
 
+	@Override
+	public Collection<String> getModifiedPaths() {
+		return List.of("Basiswerte/" + energy.getName());
+	}
+
 	@Override
 	public String getName() {
 		return energy.getName();
@@ -152,8 +165,9 @@ public class EnergyEnhancement extends Enhancement {
 	public void setTarget(final int target, final JSONObject hero) {
 		this.target.set(target + energy.getBought() - energy.getValue());
 		updateDescription();
-		recalculateValid(hero);
+		recalculateValid(EnhancementController.instance.getPendingHero(hero));
 		reset(hero);
+		EnhancementController.instance.invalidatePendingHero();
 	}
 
 	/*
@@ -188,11 +202,6 @@ public class EnergyEnhancement extends Enhancement {
 		actual.notifyListeners(null);
 	}
 
-	@Override
-	public void unapplyTemporary(final JSONObject hero) {
-		unapply(hero);
-	}
-
 	private void updateDescription() {
 		final String desc = energy.getName() + " (" + (energy.getValue() - energy.getBought() + start.getValue()) + "->"
 				+ (energy.getValue() - energy.getBought() + target.get()) + ")";
@@ -18,12 +18,13 @@ package enhancement.education;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import dsa41basis.hero.ProOrCon;
 import dsa41basis.util.DSAUtil;
-import dsa41basis.util.RequirementsUtil;
 import dsatool.gui.GUIUtil;
 import dsatool.resources.ResourceManager;
 import dsatool.ui.GraphicTableCell;
@@ -34,6 +35,7 @@ import dsatool.util.Util;
 import enhancement.enhancements.Enhancement;
 import enhancement.enhancements.EnhancementController;
 import enhancement.enhancements.EnhancementTabController;
+import enhancement.enhancements.RequirementPredicate;
 import javafx.beans.Observable;
 import javafx.beans.binding.Bindings;
 import javafx.collections.FXCollections;
@@ -60,6 +62,31 @@ import jsonant.value.JSONArray;
 import jsonant.value.JSONObject;
 
 public class EducationController extends EnhancementTabController {
+	private static final List<String> preconditionKeys = List.of("Vorteile/Nachteile/Sonderfertigkeiten", "Rassen", "Kulturen", "Professionen");
+
+	private static final Map<JSONObject, RequirementPredicate> preconditions = new IdentityHashMap<>();
+
+	public static void clearPreconditions() {
+		synchronized (preconditions) {
+			preconditions.clear();
+		}
+	}
+
+	private static RequirementPredicate getPrecondition(final JSONObject education) {
+		synchronized (preconditions) {
+			return preconditions.computeIfAbsent(education, _ -> {
+				final JSONObject requirements = education.getObj("Voraussetzungen").clone(null);
+				final Set<String> keys = new HashSet<>(requirements.keySet());
+				for (final String key : keys) {
+					if (!preconditionKeys.contains(key)) {
+						requirements.removeKey(key);
+					}
+				}
+				return RequirementPredicate.compile(requirements);
+			});
+		}
+	}
+
 	@FXML
 	private ScrollPane pane;
 	@FXML
@@ -88,16 +115,11 @@ public class EducationController extends EnhancementTabController {
 		valid.clear();
 		allItems.clear();
 
+		final JSONObject pending = EnhancementController.instance.getPendingHero(hero);
+
 		DSAUtil.foreach(_ -> true, (educationName, education) -> {
-			final JSONObject requirements = education.getObj("Voraussetzungen").clone(null);
-			final Set<String> keys = new HashSet<>(requirements.keySet());
-			for (final String key : keys) {
-				if (!List.of("Vorteile/Nachteile/Sonderfertigkeiten", "Rassen", "Kulturen", "Professionen").contains(key)) {
-					requirements.removeKey(key);
-				}
-			}
-			if (RequirementsUtil.isRequirementFulfilled(hero, requirements, null, null, false)) {
-				final EducationEnhancement newEnhancement = new EducationEnhancement(new ProOrCon(educationName, hero, education, new JSONObject(null)), hero);
+			if (getPrecondition(education).evaluate(hero, 0).isFulfilled()) {
+				final EducationEnhancement newEnhancement = new EducationEnhancement(new ProOrCon(educationName, hero, education, new JSONObject(null)), hero, pending);
 				if (newEnhancement.isValid()) {
 					valid.add(newEnhancement);
 				}
@@ -226,7 +248,7 @@ public class EducationController extends EnhancementTabController {
 					row.getStyleClass().add("invalid");
 					final Tooltip tooltip = new Tooltip();
 					tooltip.setOnShowing(_ -> {
-						tooltip.setText(row.getItem().getInvalidReason(hero));
+						tooltip.setText(row.getItem().getInvalidReason(EnhancementController.instance.getPendingHero(hero)));
 					});
 					row.setTooltip(tooltip);
 				}
@@ -254,6 +276,11 @@ public class EducationController extends EnhancementTabController {
 				planned.notifyListeners(null);
 			});
 
+			final MenuItem resolveItem = new MenuItem("Voraussetzungen erfüllen");
+			contextMenu.getItems().add(resolveItem);
+			resolveItem.setOnAction(_ -> EnhancementController.instance.resolvePrerequisites(row.getItem()));
+			contextMenu.setOnShowing(_ -> resolveItem.setVisible(row.getItem() != null && !row.getItem().isValid()));
+
 			row.contextMenuProperty().bind(Bindings.when(row.itemProperty().isNotNull()).then(contextMenu).otherwise((ContextMenu) null));
 
 			return row;
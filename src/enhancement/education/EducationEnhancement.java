@@ -36,13 +36,13 @@ import dsa41basis.util.RKPUtil;
 import dsa41basis.util.RequirementsUtil;
 import dsatool.gui.GUIUtil;
 import dsatool.resources.ResourceManager;
-import dsatool.resources.Settings;
 import dsatool.ui.ReactiveComboBox;
 import dsatool.util.ErrorLogger;
 import dsatool.util.StringUtil;
 import dsatool.util.Tuple;
 import enhancement.enhancements.Enhancement;
 import enhancement.enhancements.EnhancementController;
+import enhancement.enhancements.EnhancementSettings;
 import javafx.beans.binding.Bindings;
 import javafx.beans.binding.BooleanExpression;
 import javafx.beans.property.SimpleIntegerProperty;
@@ -103,7 +103,7 @@ public class EducationEnhancement extends Enhancement {
 	private static int getLiturgyGrade(final String liturgyName, final JSONObject liturgies, final String goddess) {
 		final JSONObject liturgy = liturgies.getObj(liturgyName);
 		final JSONObject actualLiturgy = liturgy.getObj("Gottheiten").getObj(goddess);
-		final boolean primaryLiturgies = Settings.getSettingBoolOrDefault(true, "Geweihte", "Primäre Segnungen");
+		final boolean primaryLiturgies = EnhancementSettings.get().primaryLiturgies();
 		return Math.max(actualLiturgy.getIntOrDefault("Grad", liturgy.getIntOrDefault("Grad", 1)), primaryLiturgies ? 0 : 1);
 	}
 
@@ -114,14 +114,23 @@ public class EducationEnhancement extends Enhancement {
 	}
 
 	private final ProOrCon education;
+	private final JSONObject hero;
 	private final Collection<String> choices;
 
 	private final Collection<String> variants;
 
 	private JSONObject effects;
 
+	private ProOrCon boundEducation;
+	private JSONObject boundHero;
+
 	public EducationEnhancement(final ProOrCon education, final JSONObject hero) {
+		this(education, hero, EnhancementController.instance.getPendingHero(hero));
+	}
+
+	public EducationEnhancement(final ProOrCon education, final JSONObject hero, final JSONObject pending) {
 		this.education = education;
+		this.hero = hero;
 		fullDescription.bind(description);
 		description.set(education.getDisplayName());
 		choices = switch (education.getName()) {
@@ -153,8 +162,12 @@ public class EducationEnhancement extends Enhancement {
 		} else if (variants != null && !variants.isEmpty()) {
 			education.setVariant(variants.iterator().next(), false);
 		}
-		reset(hero);
-		recalculateValid(hero);
+
+		education.descriptionProperty().addListener(_ -> boundEducation = null);
+		education.variantProperty().addListener(_ -> boundEducation = null);
+
+		reset(pending);
+		recalculateValid(pending);
 	}
 
 	@Override
@@ -170,13 +183,22 @@ public class EducationEnhancement extends Enhancement {
 		/* We don't apply these temporarily because of their large effects */
 	}
 
+	private ProOrCon bindEducation(final JSONObject hero) {
+		if (hero == this.hero) return education;
+		if (boundEducation == null || boundHero != hero) {
+			boundEducation = new ProOrCon(education.getName(), hero, education.getProOrCon(), education.getActual().clone(null));
+			boundHero = hero;
+		}
+		return boundEducation;
+	}
+
 	@Override
-	protected boolean calculateValid(final JSONObject hero) {
+	protected boolean calculateValid(final JSONObject hero, final EnhancementSettings settings) {
 		if ("Zweitstudium".equals(description.get())) {
 			if (!violatedTeachingLanguageRequirements(hero).isEmpty())
 				return false;
 		}
-		return education.getValid(false);
+		return bindEducation(hero).getValid(false);
 	}
 
 	public StringProperty choiceProperty() {
@@ -309,17 +331,17 @@ public class EducationEnhancement extends Enhancement {
 				education.setDescription(profession, false);
 				return cost;
 			default:
-				return education.getCost();
+				return bindEducation(hero).getCost();
 		}
 	}
 
 	/*
 	 * (non-Javadoc)
 	 *
-	 * @see enhancement.enhancements.Enhancement#getCalculatedCost(jsonant.value.JSONObject)
+	 * @see enhancement.enhancements.Enhancement#getCalculatedCost(jsonant.value.JSONObject, enhancement.enhancements.EnhancementSettings)
 	 */
 	@Override
-	protected double getCalculatedCost(final JSONObject hero) {
+	protected double getCalculatedCost(final JSONObject hero, final EnhancementSettings settings) {
 		if ("Zweitstudium".equals(description.get()) && !isSameGuild(hero)) return education.getProOrCon().getDoubleOrDefault("Lehrmeisterkosten", 0.0) * 1.5;
 		return education.getProOrCon().getDoubleOrDefault("Lehrmeisterkosten", 0.0);
 	}
@@ -385,7 +407,7 @@ public class EducationEnhancement extends Enhancement {
 
 	@Override
 	public String getInvalidReason(final JSONObject hero) {
-		String unfulfilled = education.getInvalidReason(false);
+		String unfulfilled = bindEducation(hero).getInvalidReason(false);
 		if ("Zweitstudium".equals(description.get())) {
 			final Collection<JSONArray> violated = violatedTeachingLanguageRequirements(hero);
 			for (final JSONArray currentViolation : violated) {
@@ -463,6 +485,11 @@ public class EducationEnhancement extends Enhancement {
 		return result;
 	}
 
+	@Override
+	public Collection<String> getModifiedPaths() {
+		return List.of();
+	}
+
 	@Override
 	public String getName() {
 		return education.getName();
@@ -1284,11 +1311,6 @@ public class EducationEnhancement extends Enhancement {
 		HeroUtil.unapplyEffect(hero, name, effects, actual);
 	}
 
-	@Override
-	public void unapplyTemporary(final JSONObject hero) {
-		/* No need to unapply since we don't apply these temporarily */
-	}
-
 	public StringProperty variantProperty() {
 		return education.variantProperty();
 	}
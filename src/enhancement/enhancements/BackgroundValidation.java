@@ -0,0 +1,137 @@
+/*
+ * Copyright 2017 DSATool team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package enhancement.enhancements;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import dsatool.util.ErrorLogger;
+import dsatool.util.Tuple;
+import javafx.application.Platform;
+import jsonant.value.JSONObject;
+
+/**
+ * Computes the validity of enhancements on worker threads against a private snapshot of the pending hero.
+ * Costs stay on the FX thread, as they are calculated by the shared hero utilities.
+ * Results of a run are only published if no newer run has been submitted in the meantime.
+ */
+public class BackgroundValidation {
+
+	public record Result(boolean valid, String invalidReason) {}
+
+	private static final int MIN_CHUNK_SIZE = 16;
+
+	private static final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+		final Thread thread = new Thread(runnable, "Steigerungen validieren");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final AtomicLong generation = new AtomicLong();
+
+	public void cancel() {
+		generation.incrementAndGet();
+	}
+
+	/**
+	 * Splits the evaluations into one contiguous chunk per worker of the common pool, so enhancements of the same group mostly stay together.
+	 * Every chunk gets its own copy of the snapshot, as even reading a JSONObject may add missing keys.
+	 */
+	private <T extends Enhancement> Map<T, Result> evaluate(final List<Tuple<T, Function<JSONObject, Result>>> evaluations, final JSONObject snapshot,
+			final long current) throws InterruptedException, ExecutionException {
+		final int chunks = Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism(), evaluations.size() / MIN_CHUNK_SIZE));
+		final int chunkSize = (evaluations.size() + chunks - 1) / chunks;
+
+		final List<Callable<Map<T, Result>>> tasks = new ArrayList<>(chunks);
+		for (int start = 0; start < evaluations.size(); start += chunkSize) {
+			final List<Tuple<T, Function<JSONObject, Result>>> chunk = evaluations.subList(start, Math.min(start + chunkSize, evaluations.size()));
+			final JSONObject hero = start == 0 ? snapshot : snapshot.clone(null);
+			tasks.add(() -> {
+				final Map<T, Result> results = new IdentityHashMap<>();
+				for (final Tuple<T, Function<JSONObject, Result>> evaluation : chunk) {
+					if (generation.get() != current) throw new CancellationException();
+					results.put(evaluation._1, evaluation._2.apply(hero));
+				}
+				return results;
+			});
+		}
+
+		final Map<T, Result> results = new IdentityHashMap<>();
+		for (final Future<Map<T, Result>> chunk : ForkJoinPool.commonPool().invokeAll(tasks)) {
+			results.putAll(chunk.get());
+		}
+		return results;
+	}
+
+	/**
+	 * Must be called on the FX thread. Enhancements that cannot be evaluated on a worker are recalculated right away.
+	 */
+	public <T extends Enhancement> void submit(final JSONObject hero, final Collection<T> enhancements, final Consumer<Map<T, Result>> publish) {
+		final long current = generation.incrementAndGet();
+		final JSONObject pending = EnhancementController.instance.getPendingHero(hero);
+		final JSONObject snapshot = EnhancementController.instance.createSnapshot(hero);
+
+		final Map<T, Result> immediate = new IdentityHashMap<>();
+		final List<Tuple<T, Function<JSONObject, Result>>> evaluations = new ArrayList<>(enhancements.size());
+		for (final T enhancement : enhancements) {
+			final Function<JSONObject, Result> evaluation = enhancement.prepareEvaluation();
+			if (evaluation == null || snapshot == null) {
+				enhancement.recalculateValid(pending);
+				immediate.put(enhancement, null);
+			} else {
+				evaluations.add(new Tuple<>(enhancement, evaluation));
+			}
+		}
+		if (!immediate.isEmpty()) {
+			publish.accept(immediate);
+		}
+		if (evaluations.isEmpty()) return;
+
+		executor.execute(() -> {
+			final Map<T, Result> results;
+			try {
+				results = evaluate(evaluations, snapshot, current);
+			} catch (final ExecutionException e) {
+				if (!(e.getCause() instanceof CancellationException)) {
+					ErrorLogger.logError(e);
+				}
+				return;
+			} catch (final CancellationException | InterruptedException e) {
+				return;
+			}
+			Platform.runLater(() -> {
+				if (generation.get() != current) return;
+				for (final Map.Entry<T, Result> result : results.entrySet()) {
+					result.getKey().publish(result.getValue());
+				}
+				publish.accept(results);
+			});
+		});
+	}
+}
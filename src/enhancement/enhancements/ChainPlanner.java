@@ -0,0 +1,290 @@
+/*
+ * Copyright 2017 DSATool team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package enhancement.enhancements;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import dsa41basis.util.HeroUtil;
+import dsatool.resources.ResourceManager;
+import dsatool.util.Tuple;
+import enhancement.attributes.AttributeEnhancement;
+import enhancement.skills.SkillEnhancement;
+import enhancement.talents.TalentEnhancement;
+import jsonant.value.JSONObject;
+
+/**
+ * Finds the order and learning methods with the fewest AP for reaching several goals, e.g. "Schwerter 14, KK 15, Finte".
+ * Every goal is reached in one enhancement, so the search runs over the sets of goals already reached.
+ * The costs and validity of a goal are evaluated once for every combination of the goals it depends on.
+ */
+public class ChainPlanner {
+
+	private record Evaluation(int ap, String method, String description) {}
+
+	/**
+	 * The planned enhancements in the order they have to be applied, as planned entries with their learning method and AP
+	 */
+	public record Plan(List<JSONObject> entries, List<String> descriptions, int ap) {
+		/**
+		 * Creates the enhancements in the order they have to be applied.
+		 * Each one is created for the hero with all pending enhancements and the previous ones of the plan applied,
+		 * so it starts from the value it was planned from.
+		 */
+		public List<Enhancement> createEnhancements(final JSONObject hero) {
+			final JSONObject state = snapshot(hero);
+			final List<Enhancement> result = new ArrayList<>(entries.size());
+			for (final JSONObject entry : entries) {
+				final Enhancement enhancement = create(entry, state);
+				if (enhancement != null) {
+					enhancement.applyTemporarily(state);
+					result.add(enhancement);
+				}
+			}
+			return result;
+		}
+	}
+
+	private static final int MAX_GOALS = 16;
+
+	private static final List<String> METHODS = List.of("Lehrmeister", "Gegenseitiges Lehren", "Selbststudium");
+
+	private static final Pattern GOAL = Pattern.compile("(.+?)\\s+(-?\\d+)");
+
+	private static Enhancement create(final JSONObject entry, final JSONObject hero) {
+		return switch (entry.getString("Typ")) {
+			case "Eigenschaft" -> AttributeEnhancement.fromJSON(entry, hero, true);
+			case "Talent" -> TalentEnhancement.fromJSON(entry, hero, true);
+			case "Sonderfertigkeit" -> SkillEnhancement.fromJSON(entry, hero, true);
+			default -> null;
+		};
+	}
+
+	/**
+	 * Parses a goal like "Schwerter 14", "KK 15" or "Finte" into a planned entry
+	 *
+	 * @throws IllegalArgumentException
+	 *             If the goal is neither an attribute, a talent nor a special skill without choices
+	 */
+	private static JSONObject parseGoal(final JSONObject hero, final String goal, final EnhancementSettings settings) {
+		final Matcher matcher = GOAL.matcher(goal);
+		final JSONObject entry = new JSONObject(null);
+		if (matcher.matches()) {
+			final String name = matcher.group(1);
+			final int value = Integer.parseInt(matcher.group(2));
+			if (ResourceManager.getResource("data/Eigenschaften").containsKey(name)) {
+				entry.put("Typ", "Eigenschaft");
+				entry.put("Eigenschaft", name);
+				entry.put("Von", hero.getObj("Eigenschaften").getObj(name).getIntOrDefault("Wert", 0));
+			} else {
+				final Tuple<JSONObject, String> talent = HeroUtil.findTalent(name);
+				if (talent == null || talent._1 == null || !ResourceManager.getResource("data/Talentgruppen").containsKey(talent._2)
+						|| talent._1.containsKey("Auswahl") || talent._1.containsKey("Freitext"))
+					throw new IllegalArgumentException("Unbekanntes Talent oder Eigenschaft: " + name);
+				entry.put("Typ", "Talent");
+				entry.put("Talent", name);
+				entry.put("Methode", settings.method());
+			}
+			entry.put("Auf", value);
+		} else {
+			final JSONObject skill = HeroUtil.findSkill(goal);
+			if (skill == null || skill.containsKey("Auswahl") || skill.containsKey("Freitext"))
+				throw new IllegalArgumentException("Unbekannte Sonderfertigkeit: " + goal);
+			entry.put("Typ", "Sonderfertigkeit");
+			entry.put("Sonderfertigkeit", goal);
+		}
+		entry.put("AP", 0);
+		return entry;
+	}
+
+	/**
+	 * Plans the comma separated goals for the hero with all pending enhancements applied
+	 *
+	 * @return The plan, which is empty if all goals are already reached, or null if the goals cannot be reached in any order
+	 * @throws IllegalArgumentException
+	 *             If a goal is unknown
+	 */
+	public static Plan plan(final JSONObject hero, final String goals) {
+		final EnhancementSettings settings = EnhancementSettings.get();
+		final JSONObject base = snapshot(hero);
+
+		final List<JSONObject> entries = new ArrayList<>();
+		for (final String goal : goals.split(",")) {
+			if (!goal.isBlank()) {
+				entries.add(parseGoal(base, goal.trim(), settings));
+			}
+		}
+		if (entries.size() > MAX_GOALS) throw new IllegalArgumentException("Es können höchstens " + MAX_GOALS + " Ziele gleichzeitig geplant werden.");
+
+		final ChainPlanner planner = new ChainPlanner(base, entries, settings);
+		try {
+			return planner.search();
+		} finally {
+			planner.templates.forEach(ChainPlanner::unregister);
+		}
+	}
+
+	/**
+	 * Returns a copy of the hero with all pending enhancements applied
+	 */
+	static JSONObject snapshot(final JSONObject hero) {
+		final JSONObject snapshot = EnhancementController.instance.createSnapshot(hero);
+		return snapshot != null ? snapshot : hero.clone(null);
+	}
+
+	static void unregister(final Enhancement enhancement) {
+		if (enhancement instanceof final TalentEnhancement talent) {
+			talent.unregister();
+		} else if (enhancement instanceof final SkillEnhancement skill) {
+			skill.unregister();
+		}
+	}
+
+	private final JSONObject base;
+	private final EnhancementSettings settings;
+	private final List<JSONObject> goals = new ArrayList<>();
+	private final List<Enhancement> templates = new ArrayList<>();
+	private final int[] relevant;
+
+	private final Map<Integer, Evaluation> evaluations = new HashMap<>();
+
+	private ChainPlanner(final JSONObject base, final List<JSONObject> entries, final EnhancementSettings settings) {
+		this.base = base;
+		this.settings = settings;
+		for (final JSONObject entry : entries) {
+			final Enhancement template = create(entry, base);
+			if (template != null) {
+				goals.add(entry);
+				templates.add(template);
+			}
+		}
+		relevant = new int[goals.size()];
+		for (int i = 0; i < goals.size(); ++i) {
+			final Collection<String> dependencies = templates.get(i).getDependencies();
+			for (int j = 0; j < goals.size(); ++j) {
+				if (i != j && DependencyGraph.intersects(templates.get(j).getModifiedPaths(), dependencies)) {
+					relevant[i] |= 1 << j;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Evaluates reaching the goal after the goals of the mask, which only depends on those goals of the mask it depends on
+	 */
+	private Evaluation evaluate(final int goal, final int mask) {
+		final int reached = mask & relevant[goal];
+		final int key = reached * MAX_GOALS + goal;
+		if (!evaluations.containsKey(key)) {
+			evaluations.put(key, evaluateUncached(goal, reached));
+		}
+		return evaluations.get(key);
+	}
+
+	/**
+	 * Evaluates the goal on a copy of the hero with the given goals reached, choosing the learning method with the fewest AP.
+	 * Returns null if the goal cannot be reached in that state.
+	 */
+	private Evaluation evaluateUncached(final int goal, final int reached) {
+		final JSONObject hero = base.clone(null);
+		for (int i = 0; i < templates.size(); ++i) {
+			if ((reached & 1 << i) != 0) {
+				templates.get(i).applyTemporarily(hero);
+			}
+		}
+
+		final Enhancement enhancement = create(goals.get(goal), hero);
+		if (enhancement == null) return null;
+		try {
+			if (!enhancement.calculateValid(hero, settings)) return null;
+			if (enhancement instanceof final TalentEnhancement talent) {
+				final String preferred = settings.method();
+				final List<String> methods = new ArrayList<>(METHODS);
+				methods.remove(preferred);
+				methods.add(0, preferred);
+				String bestMethod = null;
+				int bestAP = Integer.MAX_VALUE;
+				for (final String method : methods) {
+					talent.setMethod(method, hero);
+					final int ap = talent.getCalculatedAP(hero);
+					if (ap < bestAP) {
+						bestAP = ap;
+						bestMethod = method;
+					}
+				}
+				talent.setMethod(bestMethod, hero);
+				return new Evaluation(bestAP, bestMethod, talent.getFullDescription());
+			}
+			return new Evaluation(enhancement.getCalculatedAP(hero), null, enhancement.getFullDescription());
+		} finally {
+			unregister(enhancement);
+		}
+	}
+
+	/**
+	 * Finds the cheapest order over all sets of reached goals, where a set is reached from any of its subsets missing one goal
+	 */
+	private Plan search() {
+		final int full = (1 << goals.size()) - 1;
+		final int[] best = new int[full + 1];
+		final int[] last = new int[full + 1];
+		final Evaluation[] lastEvaluation = new Evaluation[full + 1];
+		Arrays.fill(best, Integer.MAX_VALUE);
+		best[0] = 0;
+
+		for (int mask = 1; mask <= full; ++mask) {
+			for (int goal = 0; goal < goals.size(); ++goal) {
+				if ((mask & 1 << goal) == 0) {
+					continue;
+				}
+				final int previous = mask & ~(1 << goal);
+				if (best[previous] == Integer.MAX_VALUE) {
+					continue;
+				}
+				final Evaluation evaluation = evaluate(goal, previous);
+				if (evaluation != null && best[previous] + evaluation.ap < best[mask]) {
+					best[mask] = best[previous] + evaluation.ap;
+					last[mask] = goal;
+					lastEvaluation[mask] = evaluation;
+				}
+			}
+		}
+		if (best[full] == Integer.MAX_VALUE) return null;
+
+		final List<JSONObject> entries = new ArrayList<>();
+		final List<String> descriptions = new ArrayList<>();
+		for (int mask = full; mask != 0; mask &= ~(1 << last[mask])) {
+			final Evaluation evaluation = lastEvaluation[mask];
+			final JSONObject entry = goals.get(last[mask]).clone(null);
+			if (evaluation.method != null) {
+				entry.put("Methode", evaluation.method);
+			}
+			entry.put("AP", evaluation.ap);
+			entries.add(entry);
+			descriptions.add(evaluation.description);
+		}
+		Collections.reverse(entries);
+		Collections.reverse(descriptions);
+		return new Plan(entries, descriptions, best[full]);
+	}
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2017 DSATool team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package enhancement.enhancements;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.WeakChangeListener;
+
+/**
+ * A listener on the chargen rules switch that is only referenced weakly by the switch itself.
+ * The subscriber has to keep the subscription, so it is dropped together with the subscriber even if nobody disposes it.
+ */
+public class ChargenSubscription {
+
+	private static final Set<ChargenSubscription> live = Collections.newSetFromMap(new WeakHashMap<>());
+
+	/**
+	 * Returns the number of subscriptions that have neither been disposed nor been garbage collected yet
+	 */
+	public static int getLiveCount() {
+		return live.size();
+	}
+
+	private final ChangeListener<Boolean> listener;
+	private final WeakChangeListener<Boolean> weakListener;
+
+	public ChargenSubscription(final Runnable action) {
+		listener = (_, _, _) -> action.run();
+		weakListener = new WeakChangeListener<>(listener);
+		EnhancementController.usesChargenRules.addListener(weakListener);
+		live.add(this);
+	}
+
+	public void dispose() {
+		EnhancementController.usesChargenRules.removeListener(weakListener);
+		live.remove(this);
+	}
+}
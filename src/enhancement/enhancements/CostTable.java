@@ -0,0 +1,132 @@
+/*
+ * Copyright 2017 DSATool team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package enhancement.enhancements;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.IntBinaryOperator;
+
+import dsa41basis.util.DSAUtil;
+import jsonant.value.JSONObject;
+
+/**
+ * Prefix sums of the enhancement costs, so that the cost between any two levels is a single subtraction.
+ * The tables cover the levels up to {@link #MAX_LEVEL}, costs outside of them are calculated directly.
+ */
+public class CostTable {
+
+	/**
+	 * Prefix sums of the step costs of a talent for one state of a hero from {@link #MIN_TALENT_LEVEL}, extended as far as they were looked up
+	 */
+	private static final class TalentSums {
+		private final JSONObject hero;
+		private final long stamp;
+		private final int[] sums = new int[MAX_LEVEL - MIN_TALENT_LEVEL + 1];
+		private int filled = 0;
+
+		private TalentSums(final JSONObject hero, final long stamp) {
+			this.hero = hero;
+			this.stamp = stamp;
+		}
+
+		private synchronized int get(final int level, final IntBinaryOperator stepCost) {
+			final int index = level - MIN_TALENT_LEVEL;
+			for (; filled < index; ++filled) {
+				sums[filled + 1] = sums[filled] + stepCost.applyAsInt(MIN_TALENT_LEVEL + filled, MIN_TALENT_LEVEL + filled + 1);
+			}
+			return sums[index];
+		}
+	}
+
+	/**
+	 * The talent and the rules its costs are calculated with. Talents are compared by identity, as they are shared data.
+	 */
+	private record TalentKey(JSONObject talent, String choice, int column, String method, boolean chargen, boolean basis) {
+		@Override
+		public boolean equals(final Object other) {
+			return other instanceof final TalentKey key && talent == key.talent && Objects.equals(choice, key.choice) && column == key.column
+					&& method.equals(key.method) && chargen == key.chargen && basis == key.basis;
+		}
+
+		@Override
+		public int hashCode() {
+			final int result = Objects.hash(System.identityHashCode(talent), choice, column, method);
+			return 4 * result + (chargen ? 2 : 0) + (basis ? 1 : 0);
+		}
+	}
+
+	private static final int MAX_COLUMN = 8;
+	private static final int MAX_LEVEL = 50;
+	private static final int MIN_TALENT_LEVEL = -10;
+
+	private static final List<String> METHODS = List.of("Lehrmeister", "Gegenseitiges Lehren", "Selbststudium");
+
+	private static volatile int[][] columns;
+
+	private static final Map<TalentKey, TalentSums> talentTables = new HashMap<>();
+
+	/**
+	 * Builds the column tables and discards the talent tables, which are filled again on demand
+	 */
+	public static void build() {
+		final int[][] result = new int[MAX_COLUMN + 1][MAX_LEVEL + 1];
+		for (int column = 0; column <= MAX_COLUMN; ++column) {
+			for (int level = 1; level <= MAX_LEVEL; ++level) {
+				result[column][level] = result[column][level - 1] + DSAUtil.getEnhancementCost(column, level - 1, level);
+			}
+		}
+		columns = result;
+		synchronized (talentTables) {
+			talentTables.clear();
+		}
+	}
+
+	public static int getCost(final int column, final int from, final int to) {
+		final int[][] table = columns;
+		if (table == null || column < 0 || column > MAX_COLUMN || from < 0 || from > to || to > MAX_LEVEL)
+			return DSAUtil.getEnhancementCost(column, from, to);
+		return table[column][to] - table[column][from];
+	}
+
+	/**
+	 * Returns the talent cost between two levels.
+	 * The step costs come from DSAUtil for the given talent and hero, so a table only holds the costs for one state of one hero,
+	 * identified by its stamp, and is replaced when it is looked up for another one. Costs of heroes that cannot be stamped are calculated directly.
+	 *
+	 * @param choice
+	 *            The choice or text of the talent, if it has one
+	 * @param stamp
+	 *            The stamp of the paths of the hero the costs depend on, or -1 if it cannot be tracked
+	 * @param stepCost
+	 *            The cost function of the talent for the hero
+	 */
+	public static int getTalentCost(final JSONObject talent, final String choice, final JSONObject hero, final long stamp, final int column,
+			final String method, final boolean chargen, final boolean basis, final int from, final int to, final IntBinaryOperator stepCost) {
+		if (stamp < 0 || !METHODS.contains(method) || from < MIN_TALENT_LEVEL || from > to || to > MAX_LEVEL) return stepCost.applyAsInt(from, to);
+		final TalentKey key = new TalentKey(talent, choice, column, method, chargen, basis);
+		TalentSums sums;
+		synchronized (talentTables) {
+			sums = talentTables.get(key);
+			if (sums == null || sums.hero != hero || sums.stamp != stamp) {
+				sums = new TalentSums(hero, stamp);
+				talentTables.put(key, sums);
+			}
+		}
+		return sums.get(to, stepCost) - sums.get(from, stepCost);
+	}
+}
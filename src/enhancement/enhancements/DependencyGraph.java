@@ -0,0 +1,173 @@
+/*
+ * Copyright 2017 DSATool team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package enhancement.enhancements;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import dsa41basis.util.HeroUtil;
+import dsatool.util.Tuple;
+import jsonant.value.JSONArray;
+import jsonant.value.JSONObject;
+
+/**
+ * Records which hero paths (e.g. "Eigenschaften/KL") the cost and validity of an item depend on.
+ * Paths are separated by '/', the empty path stands for the whole hero.
+ */
+public class DependencyGraph<T> {
+
+	public static final Collection<String> EVERYTHING = List.of("");
+
+	private static void addNamedPaths(final String base, final Object value, final Collection<String> paths) {
+		if (value instanceof final JSONObject named) {
+			for (final String name : named.keySet()) {
+				paths.add(base + '/' + name);
+			}
+		} else {
+			paths.add(base);
+		}
+	}
+
+	public static void addRequirementPaths(final Object requirements, final Collection<String> paths) {
+		switch (requirements) {
+			case final JSONArray array -> {
+				for (final JSONObject requirement : array.getObjs()) {
+					addRequirementPaths(requirement, paths);
+				}
+			}
+			case final JSONObject requirement -> {
+				for (final String key : requirement.keySet()) {
+					final Object value = requirement.getUnsafe(key);
+					switch (key) {
+						case "Ab", "Auswahl", "Freitext" -> {}
+						case "Muss", "Wahl", "Nicht" -> addRequirementPaths(value, paths);
+						case "Eigenschaften", "Basiswerte", "Zauber" -> addNamedPaths(key, value, paths);
+						case "Talente" -> {
+							if (value instanceof final JSONObject talents) {
+								for (final String talentName : talents.keySet()) {
+									final Tuple<JSONObject, String> talent = HeroUtil.findTalent(talentName);
+									if (talent != null && talent._2 != null) {
+										paths.add("Talente/" + talent._2 + '/' + talentName);
+									} else {
+										paths.add("Talente");
+										paths.add("Zauber");
+									}
+								}
+							} else {
+								paths.add("Talente");
+							}
+						}
+						case "Vorteile/Nachteile/Sonderfertigkeiten" -> {
+							addNamedPaths("Vorteile", value, paths);
+							addNamedPaths("Nachteile", value, paths);
+							addNamedPaths("Sonderfertigkeiten", value, paths);
+						}
+						case "Rassen", "Kulturen", "Professionen" -> paths.add("Biografie");
+						default -> paths.add("");
+					}
+				}
+			}
+			case null, default -> {}
+		}
+	}
+
+	public static boolean intersects(final Collection<String> touched, final Collection<String> paths) {
+		if (touched.contains("")) return true;
+		for (final String first : touched) {
+			for (final String second : paths) {
+				if (isRelated(first, second)) return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isRelated(final String first, final String second) {
+		if (first.isEmpty() || second.isEmpty()) return true;
+		if (first.length() == second.length()) return first.equals(second);
+		final String shorter = first.length() < second.length() ? first : second;
+		final String longer = first.length() < second.length() ? second : first;
+		return longer.startsWith(shorter) && longer.charAt(shorter.length()) == '/';
+	}
+
+	private final TreeMap<String, Set<T>> dependents = new TreeMap<>();
+
+	private final Map<T, Collection<String>> paths = new IdentityHashMap<>();
+
+	public void add(final T item, final Collection<String> itemPaths) {
+		remove(item);
+		final Collection<String> copy = new HashSet<>(itemPaths);
+		paths.put(item, copy);
+		for (final String path : copy) {
+			dependents.computeIfAbsent(path, _ -> Collections.newSetFromMap(new IdentityHashMap<>())).add(item);
+		}
+	}
+
+	public void clear() {
+		dependents.clear();
+		paths.clear();
+	}
+
+	/**
+	 * Returns all items that read one of the touched paths, one of their ancestors or one of their descendants
+	 */
+	public Set<T> getAffected(final Collection<String> touched) {
+		final Set<T> result = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (final String path : touched) {
+			if (path.isEmpty()) {
+				result.addAll(paths.keySet());
+				return result;
+			}
+
+			String current = path;
+			while (true) {
+				final Set<T> items = dependents.get(current);
+				if (items != null) {
+					result.addAll(items);
+				}
+				if (current.isEmpty()) {
+					break;
+				}
+				final int separator = current.lastIndexOf('/');
+				current = separator < 0 ? "" : current.substring(0, separator);
+			}
+
+			for (final Set<T> items : dependents.subMap(path + '/', true, path + '0', false).values()) {
+				result.addAll(items);
+			}
+		}
+		return result;
+	}
+
+	public void remove(final T item) {
+		final Collection<String> itemPaths = paths.remove(item);
+		if (itemPaths == null) return;
+		for (final String path : itemPaths) {
+			final Set<T> items = dependents.get(path);
+			if (items != null) {
+				items.remove(item);
+				if (items.isEmpty()) {
+					dependents.remove(path);
+				}
+			}
+		}
+	}
+}
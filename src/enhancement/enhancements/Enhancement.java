@@ -17,16 +17,12 @@ package enhancement.enhancements;
 
 import java.time.format.DateTimeFormatter;
 import java.util.Collection;
+import java.util.function.Function;
 
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.ReadOnlyStringProperty;
-import javafx.beans.property.SimpleBooleanProperty;
-import javafx.beans.property.SimpleDoubleProperty;
-import javafx.beans.property.SimpleIntegerProperty;
-import javafx.beans.property.SimpleStringProperty;
-import javafx.beans.property.StringProperty;
 import jsonant.value.JSONObject;
 import jsonant.value.JSONValue;
 
@@ -34,47 +30,49 @@ public abstract class Enhancement {
 
 	public static final DateTimeFormatter DateFormatter = DateTimeFormatter.ofPattern("dd.MM.uuuu");
 
-	protected final StringProperty description = new SimpleStringProperty();
-	protected final StringProperty fullDescription = new SimpleStringProperty();
-	protected final DoubleProperty cost = new SimpleDoubleProperty();
-	protected final IntegerProperty ap = new SimpleIntegerProperty();
-	protected final BooleanProperty valid = new SimpleBooleanProperty(true);
-	protected final BooleanProperty cheaper = new SimpleBooleanProperty(false);
-	protected final StringProperty date = new SimpleStringProperty();
+	protected final LazyValue.Text description = new LazyValue.Text(null);
+	protected final LazyValue.Text fullDescription = new LazyValue.Text(null);
+	protected final LazyValue.Real cost = new LazyValue.Real(0);
+	protected final LazyValue.Int ap = new LazyValue.Int(0);
+	protected final LazyValue.Bool valid = new LazyValue.Bool(true);
+	protected final LazyValue.Bool cheaper = new LazyValue.Bool(false);
+	protected final LazyValue.Text date = new LazyValue.Text(null);
 
 	protected boolean hasCustomCost = false;
 	protected boolean hasCustomAP = false;
 
+	protected String invalidReason;
+
 	public abstract void apply(JSONObject hero);
 
 	public abstract void applyTemporarily(JSONObject hero);
 
 	public IntegerProperty apProperty() {
-		return ap;
+		return ap.property();
 	}
 
-	protected abstract boolean calculateValid(JSONObject hero);
+	protected abstract boolean calculateValid(JSONObject hero, EnhancementSettings settings);
 
 	public BooleanProperty cheaperProperty() {
-		return cheaper;
+		return cheaper.property();
 	}
 
 	public abstract Enhancement clone(final JSONObject hero, final Collection<Enhancement> enhancements);
 
 	public DoubleProperty costProperty() {
-		return cost;
+		return cost.property();
 	}
 
 	public ReadOnlyStringProperty dateProperty() {
-		return date;
+		return date.property();
 	}
 
 	public ReadOnlyStringProperty descriptionProperty() {
-		return description;
+		return description.property();
 	}
 
 	public ReadOnlyStringProperty fullDescriptionProperty() {
-		return fullDescription;
+		return fullDescription.property();
 	}
 
 	public int getAP() {
@@ -83,7 +81,7 @@ public abstract class Enhancement {
 
 	protected abstract int getCalculatedAP(JSONObject hero);
 
-	protected abstract double getCalculatedCost(JSONObject hero);
+	protected abstract double getCalculatedCost(JSONObject hero, EnhancementSettings settings);
 
 	public double getCost() {
 		return cost.get();
@@ -93,12 +91,26 @@ public abstract class Enhancement {
 		return date.get();
 	}
 
+	/**
+	 * The hero paths the cost and validity of this enhancement depend on
+	 */
+	public Collection<String> getDependencies() {
+		return DependencyGraph.EVERYTHING;
+	}
+
 	public String getFullDescription() {
 		return fullDescription.get();
 	}
 
 	abstract public String getInvalidReason(JSONObject hero);
 
+	/**
+	 * The hero paths changed when this enhancement is applied
+	 */
+	public Collection<String> getModifiedPaths() {
+		return DependencyGraph.EVERYTHING;
+	}
+
 	public abstract String getName();
 
 	public boolean isCheaper() {
@@ -109,22 +121,48 @@ public abstract class Enhancement {
 		return valid.get();
 	}
 
+	/**
+	 * Captures the state needed to compute the validity against a hero snapshot on a worker thread,
+	 * or returns null if this enhancement can only be computed on the FX thread
+	 */
+	public Function<JSONObject, BackgroundValidation.Result> prepareEvaluation() {
+		return null;
+	}
+
+	public void publish(final BackgroundValidation.Result result) {
+		valid.set(result.valid());
+		invalidReason = result.invalidReason();
+	}
+
 	public void recalculateCosts(final JSONObject hero) {
+		recalculateCosts(hero, EnhancementSettings.get());
+	}
+
+	public void recalculateCosts(final JSONObject hero, final EnhancementSettings settings) {
 		if (!hasCustomAP) {
 			ap.set(getCalculatedAP(hero));
 		}
 		if (!hasCustomCost) {
-			cost.set(getCalculatedCost(hero));
+			cost.set(getCalculatedCost(hero, settings));
 		}
 	}
 
 	public void recalculateValid(final JSONObject hero) {
-		valid.set(calculateValid(hero));
+		recalculateValid(hero, EnhancementSettings.get());
+	}
+
+	public void recalculateValid(final JSONObject hero, final EnhancementSettings settings) {
+		invalidReason = null;
+		valid.set(calculateValid(hero, settings));
 	}
 
 	public void reset(final JSONObject hero) {
+		reset(hero, EnhancementSettings.get());
+	}
+
+	public void reset(final JSONObject hero, final EnhancementSettings settings) {
 		ap.set(getCalculatedAP(hero));
-		cost.set(getCalculatedCost(hero));
+		cost.set(getCalculatedCost(hero, settings));
 		hasCustomAP = false;
 		hasCustomCost = false;
 	}
@@ -133,7 +171,7 @@ public abstract class Enhancement {
 		this.ap.set(ap);
 		hasCustomAP = true;
 		if (!hasCustomCost) {
-			cost.set(getCalculatedCost(hero));
+			cost.set(getCalculatedCost(hero, EnhancementSettings.get()));
 		}
 	}
 
@@ -146,9 +184,7 @@ public abstract class Enhancement {
 
 	public abstract void unapply(JSONObject hero);
 
-	public abstract void unapplyTemporary(JSONObject hero);
-
 	public BooleanProperty validProperty() {
-		return valid;
+		return valid.property();
 	}
 }
@@ -17,16 +17,17 @@ package enhancement.enhancements;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
-import java.util.Stack;
+import java.util.Set;
 
 import dsa41basis.ui.hero.HeroController;
 import dsa41basis.ui.hero.HeroSelector;
 import dsa41basis.util.HeroUtil;
 import dsatool.gui.GUIUtil;
 import dsatool.gui.ThemedAlert;
-import dsatool.resources.Settings;
+import dsatool.resources.ResourceManager;
 import dsatool.ui.DoubleSpinnerTableCell;
 import dsatool.ui.IntegerSpinnerTableCell;
 import dsatool.util.ErrorLogger;
@@ -75,6 +76,19 @@ public class EnhancementController extends HeroSelector {
 
 	public static EnhancementController instance;
 
+	/**
+	 * Returns the money of the hero in silver
+	 */
+	public static double getAvailableMoney(final JSONObject hero) {
+		final JSONObject money = hero.getObj("Besitz").getObj("Geld");
+		int availableMoney = 0;
+		for (final String unit : new String[] { "Dukaten", "Silbertaler", "Heller", "Kreuzer" }) {
+			availableMoney *= 10;
+			availableMoney += money.getIntOrDefault(unit, 0);
+		}
+		return availableMoney / 100.0;
+	}
+
 	private VBox pane;
 	@FXML
 	private TabPane tabPane;
@@ -100,19 +114,23 @@ public class EnhancementController extends HeroSelector {
 	private CheckBox chargenRules;
 
 	private JSONObject hero;
+	private HeroOverlay overlay;
+	private HeroStamps stamps;
+	private HeroChangeDispatcher changeDispatcher;
+
+	private final RecalculationScheduler scheduler = new RecalculationScheduler(this::recalculate);
 
 	private final JSONListener apListener = _ -> availableApLabel
 			.setText(Integer.toString(hero.getObj("Biografie").getIntOrDefault("Abenteuerpunkte-Guthaben", 0)) + " AP");
 
 	private final JSONListener moneyListener = _ -> {
-		final JSONObject money = hero.getObj("Besitz").getObj("Geld");
-		int availableMoney = 0;
-		for (final String unit : new String[] { "Dukaten", "Silbertaler", "Heller", "Kreuzer" }) {
-			availableMoney *= 10;
-			availableMoney += money.getIntOrDefault(unit, 0);
-		}
+		availableMoneyLabel.setText(Double.toString(getAvailableMoney(hero)) + " Silber");
+	};
 
-		availableMoneyLabel.setText(Double.toString(availableMoney / 100.0) + " Silber");
+	private final JSONListener settingsListener = _ -> {
+		if (hero != null) {
+			scheduler.schedule(true, DependencyGraph.EVERYTHING);
+		}
 	};
 
 	public EnhancementController() {
@@ -147,6 +165,7 @@ public class EnhancementController extends HeroSelector {
 
 	@FXML
 	private void apply() {
+		scheduler.flush();
 		for (final Enhancement enhancement : enhancementTable.getItems()) {
 			if (!enhancement.isValid()) {
 				final Alert alert = new ThemedAlert(AlertType.WARNING);
@@ -160,13 +179,14 @@ public class EnhancementController extends HeroSelector {
 			}
 		}
 
+		final EnhancementSettings settings = EnhancementSettings.get();
 		final int ap = calculateAP();
 		final double cost = calculateCost();
 
 		final JSONObject bio = hero.getObj("Biografie");
 
 		String text = "Die ausgewählten Steigerungen kosten " + ap + " AP (" + bio.getIntOrDefault("Abenteuerpunkte-Guthaben", 0) + " AP verfügbar).";
-		if (Settings.getSettingBoolOrDefault(true, "Steigerung", "Lehrmeisterkosten") && cost != 0) {
+		if (settings.teacherCosts() && cost != 0) {
 			text += "\nEs werden " + cost + " Silber an Lehrmeisterkosten fällig (" + availableMoneyLabel.getText() + " verfügbar).";
 		}
 
@@ -177,20 +197,23 @@ public class EnhancementController extends HeroSelector {
 		alert.getButtonTypes().setAll(ButtonType.OK, ButtonType.CANCEL);
 		alert.showAndWait().filter(response -> response.equals(ButtonType.OK)).ifPresent(_ -> {
 			final int index = Math.max(list.getSelectionModel().getSelectedIndex(), 0);
-			final JSONArray history = hero.getArr("Historie");
-			bio.put("Abenteuerpunkte-Guthaben", bio.getIntOrDefault("Abenteuerpunkte-Guthaben", 0) - ap);
-			if (Settings.getSettingBoolOrDefault(true, "Steigerung", "Lehrmeisterkosten") && cost != 0) {
-				HeroUtil.addMoney(hero, (int) cost * -100);
-			}
 			final ArrayList<Enhancement> enhancements = new ArrayList<>(enhancementTable.getItems());
-			enhancementTable.getItems().clear();
-			for (final Enhancement enhancement : enhancements) {
-				enhancement.apply(hero);
-				history.add(enhancement.toJSON(history, false));
+			final boolean applied = HeroTransaction.run(hero, working -> {
+				final JSONObject workingBio = working.getObj("Biografie");
+				workingBio.put("Abenteuerpunkte-Guthaben", workingBio.getIntOrDefault("Abenteuerpunkte-Guthaben", 0) - ap);
+				if (settings.teacherCosts() && cost != 0) {
+					HeroUtil.addMoney(working, (int) cost * -100);
+				}
+				final JSONArray history = working.getArr("Historie");
+				for (final Enhancement enhancement : enhancements) {
+					enhancement.apply(working);
+					history.add(enhancement.toJSON(history, false));
+				}
+			});
+			if (applied) {
+				enhancementTable.getItems().clear();
+				setHero(index);
 			}
-			bio.notifyListeners(null);
-			history.notifyListeners(null);
-			setHero(index);
 		});
 	}
 
@@ -217,6 +240,7 @@ public class EnhancementController extends HeroSelector {
 
 	@FXML
 	private void clear() {
+		scheduler.flush();
 		final Alert alert = new ThemedAlert(AlertType.CONFIRMATION);
 		alert.setTitle("Zurücksetzen");
 		alert.setHeaderText("Dies wird die ausgewählten Steigerungen löschen.");
@@ -226,10 +250,54 @@ public class EnhancementController extends HeroSelector {
 		});
 	}
 
+	public JSONObject createSnapshot(final JSONObject hero) {
+		if (overlay == null || overlay.getHero() != hero) return null;
+		return overlay.createSnapshot();
+	}
+
+	/**
+	 * Adds copies of the enhancements for the hero to the pending enhancements like the "Steigern" action of their tab,
+	 * so the tab no longer offers them until they are removed again
+	 */
+	public void enhance(final Collection<? extends Enhancement> enhancements) {
+		for (final Enhancement enhancement : enhancements) {
+			for (final HeroController controller : controllers) {
+				if (((EnhancementTabController) controller).enhance(enhancement)) {
+					break;
+				}
+			}
+			addEnhancement(enhancement.clone(hero, getEnhancements()));
+		}
+	}
+
+	public HeroChangeDispatcher getChangeDispatcher() {
+		return changeDispatcher;
+	}
+
 	public Collection<Enhancement> getEnhancements() {
 		return enhancementTable.getItems();
 	}
 
+	public JSONObject getPendingHero(final JSONObject hero) {
+		if (overlay == null || overlay.getHero() != hero) return hero;
+		return overlay.get();
+	}
+
+	/**
+	 * Returns a stamp that changes whenever one of the given paths of the hero changes, or -1 if that cannot be tracked
+	 */
+	public long getStamp(final JSONObject hero, final Collection<String> paths) {
+		if (overlay != null && overlay.isCurrent(hero)) return 0;
+		if (stamps == null || stamps.getHero() != hero) return -1;
+		return stamps.get(paths);
+	}
+
+	public void invalidatePendingHero() {
+		if (overlay != null) {
+			overlay.invalidate();
+		}
+	}
+
 	@Override
 	public void load() {
 		try {
@@ -243,7 +311,7 @@ public class EnhancementController extends HeroSelector {
 		tabPane.prefHeightProperty().bind(pane.heightProperty().divide(2));
 		enhancementTable.prefHeightProperty().bind(pane.heightProperty().divide(2).subtract(40));
 
-		if (!Settings.getSettingBoolOrDefault(true, "Steigerung", "Lehrmeisterkosten")) {
+		if (!EnhancementSettings.get().teacherCosts()) {
 			costColumn.setMinWidth(0);
 			costColumn.setPrefWidth(0);
 			costColumn.setMaxWidth(0);
@@ -263,7 +331,7 @@ public class EnhancementController extends HeroSelector {
 		costColumn.setOnEditCommit(t -> {
 			if (t.getRowValue() != null) {
 				t.getRowValue().setCost(t.getNewValue());
-				recalculate(false);
+				scheduler.schedule(false, Set.of());
 			}
 		});
 
@@ -272,7 +340,7 @@ public class EnhancementController extends HeroSelector {
 		apColumn.setOnEditCommit(t -> {
 			if (t.getRowValue() != null) {
 				t.getRowValue().setAP(t.getNewValue(), hero);
-				recalculate(false);
+				scheduler.schedule(false, Set.of());
 			}
 		});
 
@@ -289,7 +357,7 @@ public class EnhancementController extends HeroSelector {
 						getStyleClass().add("invalid");
 						final Tooltip tooltip = new Tooltip();
 						tooltip.setOnShowing(_ -> {
-							tooltip.setText(getItem().getInvalidReason(hero));
+							tooltip.setText(getItem().getInvalidReason(getPendingHero(hero)));
 						});
 						setTooltip(tooltip);
 					}
@@ -299,7 +367,8 @@ public class EnhancementController extends HeroSelector {
 			GUIUtil.dragDropReorder(row, () -> reordering[0] = true, () -> {}, moved -> {
 				reordering[0] = false;
 				if (moved.length > 0) {
-					recalculate(true);
+					invalidatePendingHero();
+					scheduler.schedule(true, Set.of());
 				}
 			}, tableView);
 
@@ -308,7 +377,7 @@ public class EnhancementController extends HeroSelector {
 			contextMenu.getItems().add(resetItem);
 			resetItem.setOnAction(_ -> {
 				row.getItem().reset(hero);
-				recalculate(false);
+				scheduler.schedule(false, Set.of());
 			});
 
 			final MenuItem planItem = new MenuItem("Vormerken");
@@ -341,9 +410,19 @@ public class EnhancementController extends HeroSelector {
 		apLabel.setText("0");
 		costLabel.setText("0.0");
 
-		enhancementTable.getItems().addListener((final Change<? extends Enhancement> _) -> {
+		enhancementTable.getItems().addListener((final Change<? extends Enhancement> change) -> {
 			if (!reordering[0]) {
-				recalculate(true);
+				final Set<String> touched = new HashSet<>();
+				while (change.next()) {
+					for (final Enhancement removed : change.getRemoved()) {
+						touched.addAll(removed.getModifiedPaths());
+					}
+					for (final Enhancement added : change.getAddedSubList()) {
+						touched.addAll(added.getModifiedPaths());
+					}
+				}
+				invalidatePendingHero();
+				scheduler.schedule(true, touched);
 			}
 		});
 
@@ -355,33 +434,57 @@ public class EnhancementController extends HeroSelector {
 		tabPane.getTabs().get(0).setContent(firstPage.getControl());
 
 		usesChargenRules.bindBidirectional(chargenRules.selectedProperty());
-		usesChargenRules.addListener((_, _, _) -> recalculate(false));
+		usesChargenRules.addListener((_, _, _) -> scheduler.schedule(false, DependencyGraph.EVERYTHING));
+		ResourceManager.getResource("settings/Einstellungen").addListener(settingsListener);
 	}
 
-	private void recalculate(final boolean recalculateValid) {
-		final Stack<Enhancement> enhancements = new Stack<>();
-		for (final Enhancement e : enhancementTable.getItems()) {
-			e.recalculateCosts(hero);
-			e.applyTemporarily(hero);
-			enhancements.push(e);
-		}
+	private void recalculate(final boolean recalculateValid, final Collection<String> touched) {
+		final EnhancementSettings settings = EnhancementSettings.get();
+		final JSONObject pending = overlay != null ? overlay.rebuild((enhancement, current) -> enhancement.recalculateCosts(current, settings)) : hero;
 
-		for (final HeroController controller : controllers) {
-			final EnhancementTabController current = (EnhancementTabController) controller;
-			if (current.tab.isSelected()) {
-				if (recalculateValid) {
-					current.recalculateValid(hero);
+		if (!touched.isEmpty()) {
+			for (final HeroController controller : controllers) {
+				final EnhancementTabController current = (EnhancementTabController) controller;
+				if (current.tab.isSelected()) {
+					if (recalculateValid) {
+						current.recalculateValid(pending, touched);
+					}
+					current.recalculate(pending, touched);
 				}
-				current.recalculate(hero);
 			}
 		}
-		for (final Enhancement e : enhancements) {
-			e.unapplyTemporary(hero);
-		}
 		apLabel.setText(String.valueOf(calculateAP()));
 		costLabel.setText(String.valueOf(calculateCost()));
 	}
 
+	/**
+	 * Searches the cheapest raises that make the invalid enhancement valid and offers to add them to the pending enhancements
+	 */
+	public void resolvePrerequisites(final Enhancement enhancement) {
+		scheduler.flush();
+		final ChainPlanner.Plan plan = PrerequisiteResolver.resolve(hero, enhancement);
+
+		if (plan == null) {
+			final Alert alert = new ThemedAlert(AlertType.INFORMATION);
+			alert.setTitle("Voraussetzungen erfüllen");
+			alert.setHeaderText("Die Voraussetzungen für " + enhancement.getFullDescription() + " können nicht durch Steigerungen erfüllt werden.");
+			alert.setContentText(enhancement.getInvalidReason(getPendingHero(hero)));
+			alert.showAndWait();
+			return;
+		}
+
+		final Alert alert = new ThemedAlert(AlertType.CONFIRMATION);
+		alert.setTitle("Voraussetzungen erfüllen");
+		alert.setHeaderText("Die Voraussetzungen für " + enhancement.getFullDescription() + " können für " + plan.ap() + " AP erfüllt werden.");
+		alert.setContentText(String.join("\n", plan.descriptions()) + "\n\nSollen diese Steigerungen ausgewählt werden?");
+		alert.getButtonTypes().setAll(ButtonType.OK, ButtonType.CANCEL);
+		alert.showAndWait().filter(response -> response.equals(ButtonType.OK)).ifPresent(_ -> {
+			final List<Enhancement> raises = plan.createEnhancements(hero);
+			enhance(raises);
+			raises.forEach(ChainPlanner::unregister);
+		});
+	}
+
 	@Override
 	protected void setHero(final int index) {
 		enhancementTable.getItems().clear();
@@ -390,7 +493,20 @@ public class EnhancementController extends HeroSelector {
 			hero.getObj("Besitz").getObj("Geld").removeListener(moneyListener);
 		}
 
+		if (overlay != null) {
+			overlay.dispose();
+		}
+		if (stamps != null) {
+			stamps.dispose();
+		}
+		if (changeDispatcher != null) {
+			changeDispatcher.dispose();
+		}
+
 		hero = heroes.get(index);
+		overlay = new HeroOverlay(hero, enhancementTable::getItems);
+		stamps = new HeroStamps(hero);
+		changeDispatcher = new HeroChangeDispatcher(hero);
 		chargenRules.setSelected(applyChargenRules(hero));
 
 		hero.getObj("Biografie").addListener(apListener);
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2017 DSATool team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package enhancement.enhancements;
+
+import dsatool.resources.Settings;
+
+/**
+ * The settings used for enhancements, read once when a setting changes instead of on every cost calculation.
+ * A recalculation pass passes one snapshot down to all cost and validity calculations.
+ * Teacher cost rates are given in Kreuzer per AP.
+ */
+public record EnhancementSettings(String method, boolean teacherCosts, int talentRate, int spellRate, int skillRate, int magicalSkillRate,
+		int clericalSkillRate, boolean primaryLiturgies, boolean background) {
+
+	private static volatile EnhancementSettings current = read();
+
+	public static EnhancementSettings get() {
+		return current;
+	}
+
+	private static EnhancementSettings read() {
+		return new EnhancementSettings(
+				Settings.getSettingStringOrDefault("Gegenseitiges Lehren", "Steigerung", "Lernmethode"),
+				Settings.getSettingBoolOrDefault(true, "Steigerung", "Lehrmeisterkosten"),
+				Settings.getSettingIntOrDefault(70, "Steigerung", "Lehrmeisterkosten:Talente"),
+				Settings.getSettingIntOrDefault(500, "Steigerung", "Lehrmeisterkosten:Zauber"),
+				Settings.getSettingIntOrDefault(70, "Steigerung", "Lehrmeisterkosten:Sonderfertigkeiten"),
+				Settings.getSettingIntOrDefault(500, "Steigerung", "Lehrmeisterkosten:Sonderfertigkeiten:Magisch"),
+				Settings.getSettingIntOrDefault(70, "Steigerung", "Lehrmeisterkosten:Sonderfertigkeiten:Klerikal"),
+				Settings.getSettingBoolOrDefault(true, "Geweihte", "Primäre Segnungen"),
+				Settings.getSettingBoolOrDefault(true, "Steigerung", "Hintergrundberechnung"));
+	}
+
+	/**
+	 * Reads the settings again and replaces the current snapshot as a whole
+	 */
+	public static EnhancementSettings refresh() {
+		final EnhancementSettings settings = read();
+		current = settings;
+		return settings;
+	}
+}
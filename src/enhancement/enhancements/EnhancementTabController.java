@@ -15,6 +15,8 @@
  */
 package enhancement.enhancements;
 
+import java.util.Collection;
+
 import dsa41basis.ui.hero.HeroController;
 import javafx.scene.Node;
 import javafx.scene.control.Tab;
@@ -55,6 +57,15 @@ public abstract class EnhancementTabController implements HeroController {
 		stopInit = false;
 	}
 
+	/**
+	 * Records that the enhancement was added to the pending enhancements from outside the tab, like the "Steigern" action of the tab does
+	 *
+	 * @return Whether the enhancement belongs to this tab
+	 */
+	public boolean enhance(final Enhancement enhancement) {
+		return false;
+	}
+
 	protected abstract Node getControl();
 
 	protected abstract String getText();
@@ -63,8 +74,16 @@ public abstract class EnhancementTabController implements HeroController {
 
 	public abstract void recalculate(JSONObject hero);
 
+	public void recalculate(final JSONObject hero, final Collection<String> touched) {
+		recalculate(hero);
+	}
+
 	public abstract void recalculateValid(JSONObject hero);
 
+	public void recalculateValid(final JSONObject hero, final Collection<String> touched) {
+		recalculateValid(hero);
+	}
+
 	protected abstract void registerListeners();
 
 	public abstract boolean removeEnhancement(Enhancement enhancement);
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2017 DSATool team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package enhancement.enhancements;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javafx.application.Platform;
+import jsonant.event.JSONListener;
+import jsonant.value.JSONObject;
+import jsonant.value.JSONValue;
+
+/**
+ * Routes changes below a top level key of the hero (e.g. "Talente") only to the subscribers of the changed path (e.g. "Talente/Kampftalente").
+ * All notifications until the FX thread is idle again are merged, so every subscriber runs at most once per burst.
+ */
+public class HeroChangeDispatcher {
+
+	private static String getRoot(final String path) {
+		final int separator = path.indexOf('/');
+		return separator < 0 ? path : path.substring(0, separator);
+	}
+
+	private final JSONObject hero;
+
+	private final Map<String, JSONListener> rootListeners = new HashMap<>();
+	private final Map<String, List<Runnable>> subscribers = new HashMap<>();
+
+	private final Set<Runnable> dirty = new LinkedHashSet<>();
+	private boolean scheduled = false;
+
+	public HeroChangeDispatcher(final JSONObject hero) {
+		this.hero = hero;
+	}
+
+	private void dispatch(final String root, final JSONValue changed) {
+		final List<String> changedPath = List.of(getPath(root, changed));
+		for (final Map.Entry<String, List<Runnable>> subscription : subscribers.entrySet()) {
+			if (root.equals(getRoot(subscription.getKey())) && DependencyGraph.intersects(changedPath, List.of(subscription.getKey()))) {
+				dirty.addAll(subscription.getValue());
+			}
+		}
+		if (!dirty.isEmpty() && !scheduled) {
+			scheduled = true;
+			Platform.runLater(this::flush);
+		}
+	}
+
+	public void dispose() {
+		for (final Map.Entry<String, JSONListener> listener : rootListeners.entrySet()) {
+			hero.getObj(listener.getKey()).removeListener(listener.getValue());
+		}
+		rootListeners.clear();
+		subscribers.clear();
+		dirty.clear();
+	}
+
+	public void flush() {
+		scheduled = false;
+		final List<Runnable> pending = new ArrayList<>(dirty);
+		dirty.clear();
+		for (final Runnable subscriber : pending) {
+			subscriber.run();
+		}
+	}
+
+	/**
+	 * Returns the path of the changed value below the given root, or the root itself if the change cannot be located more precisely
+	 */
+	private String getPath(final String root, final JSONValue changed) {
+		final JSONObject rootObject = hero.getObj(root);
+		final List<String> keys = new ArrayList<>();
+		JSONValue current = changed;
+		while (current != null && current != rootObject) {
+			final JSONValue parent = current.getParent();
+			if (parent instanceof final JSONObject object) {
+				for (final String key : object.keySet()) {
+					if (object.getUnsafe(key) == current) {
+						keys.add(key);
+						break;
+					}
+				}
+			}
+			current = parent;
+		}
+		if (current == null) return root;
+
+		final StringBuilder path = new StringBuilder(root);
+		for (int i = keys.size() - 1; i >= 0; --i) {
+			path.append('/').append(keys.get(i));
+		}
+		return path.toString();
+	}
+
+	public JSONObject getHero() {
+		return hero;
+	}
+
+	public void subscribe(final String path, final Runnable subscriber) {
+		final String root = getRoot(path);
+		if (!rootListeners.containsKey(root)) {
+			final JSONListener listener = changed -> dispatch(root, changed);
+			rootListeners.put(root, listener);
+			hero.getObj(root).addListener(listener);
+		}
+		subscribers.computeIfAbsent(path, _ -> new ArrayList<>()).add(subscriber);
+	}
+
+	public void unsubscribe(final String path, final Runnable subscriber) {
+		final List<Runnable> current = subscribers.get(path);
+		if (current != null) {
+			current.remove(subscriber);
+			if (current.isEmpty()) {
+				subscribers.remove(path);
+			}
+		}
+		dirty.remove(subscriber);
+	}
+}
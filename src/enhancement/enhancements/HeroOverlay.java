@@ -0,0 +1,130 @@
+/*
+ * Copyright 2017 DSATool team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package enhancement.enhancements;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+import jsonant.event.JSONListener;
+import jsonant.value.JSONArray;
+import jsonant.value.JSONObject;
+
+/**
+ * A copy of a hero with all pending enhancements applied, so the hero itself never has to be modified temporarily
+ */
+public class HeroOverlay {
+
+	private static final List<String> unusedKeys = List.of("Historie", "Vorgemerkte Steigerungen");
+
+	private final JSONObject hero;
+	private final Supplier<Collection<Enhancement>> enhancements;
+
+	private JSONObject overlay;
+	private boolean building = false;
+
+	private final JSONListener listener = _ -> invalidate();
+
+	public HeroOverlay(final JSONObject hero, final Supplier<Collection<Enhancement>> enhancements) {
+		this.hero = hero;
+		this.enhancements = enhancements;
+		hero.addListener(listener);
+	}
+
+	private JSONObject copyHero() {
+		final JSONObject copy = new JSONObject(null);
+		for (final String key : hero.keySet()) {
+			if (unusedKeys.contains(key)) {
+				continue;
+			}
+			switch (hero.getUnsafe(key)) {
+				case final JSONObject obj -> copy.put(key, obj.clone(copy));
+				case final JSONArray arr -> copy.put(key, arr.clone(copy));
+				case final String str -> copy.put(key, str);
+				case final Boolean bool -> copy.put(key, bool.booleanValue());
+				case final Double dbl -> copy.put(key, dbl.doubleValue());
+				case final Number num -> copy.put(key, num.longValue());
+				case null, default -> {}
+			}
+		}
+		return copy;
+	}
+
+	/**
+	 * Returns a private copy with all pending enhancements applied, which is not shared with anyone else
+	 */
+	public JSONObject createSnapshot() {
+		final JSONObject snapshot = copyHero();
+		for (final Enhancement enhancement : enhancements.get()) {
+			enhancement.applyTemporarily(snapshot);
+		}
+		return snapshot;
+	}
+
+	public void dispose() {
+		hero.removeListener(listener);
+		overlay = null;
+	}
+
+	public JSONObject get() {
+		if (overlay == null && !building) {
+			rebuild((_, _) -> {});
+		}
+		return overlay != null ? overlay : hero;
+	}
+
+	public JSONObject getHero() {
+		return hero;
+	}
+
+	public void invalidate() {
+		if (!building) {
+			overlay = null;
+		}
+	}
+
+	/**
+	 * Returns whether the given hero is the completely built copy, which stays unchanged until it is replaced
+	 */
+	public boolean isCurrent(final JSONObject candidate) {
+		return !building && overlay != null && overlay == candidate;
+	}
+
+	public JSONObject rebuild(final BiConsumer<Enhancement, JSONObject> beforeApply) {
+		final Collection<Enhancement> pending = enhancements.get();
+		if (pending.isEmpty()) {
+			overlay = null;
+			return hero;
+		}
+
+		building = true;
+		try {
+			final JSONObject result = copyHero();
+			overlay = result;
+			for (final Enhancement enhancement : pending) {
+				beforeApply.accept(enhancement, result);
+				enhancement.applyTemporarily(result);
+			}
+		} catch (final RuntimeException e) {
+			overlay = null;
+			throw e;
+		} finally {
+			building = false;
+		}
+		return overlay;
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2017 DSATool team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package enhancement.enhancements;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jsonant.event.JSONListener;
+import jsonant.value.JSONObject;
+
+/**
+ * Modification stamps of the hero subtrees most enhancements depend on.
+ * Stamps only ever increase, also across heroes, so a result computed against an equal stamp is still up to date.
+ */
+public class HeroStamps {
+
+	public static final List<String> SUBTREES = List.of("Eigenschaften", "Basiswerte", "Talente", "Zauber", "Hauszauber", "Sonderfertigkeiten",
+			"Verbilligte Sonderfertigkeiten", "Vorteile", "Nachteile", "Biografie");
+
+	private static long clock = 0;
+
+	private final JSONObject hero;
+
+	private final Map<String, Long> stamps = new HashMap<>();
+	private final Map<String, JSONListener> listeners = new HashMap<>();
+
+	/**
+	 * Notices subtrees that are only created after the stamps, e.g. the first cheapened special skill
+	 */
+	private final JSONListener heroListener = _ -> {
+		for (final String subtree : SUBTREES) {
+			if (!listeners.containsKey(subtree) && hero.containsKey(subtree)) {
+				track(subtree);
+			}
+		}
+	};
+
+	public HeroStamps(final JSONObject hero) {
+		this.hero = hero;
+		for (final String subtree : SUBTREES) {
+			if (hero.containsKey(subtree)) {
+				track(subtree);
+			} else {
+				stamps.put(subtree, ++clock);
+			}
+		}
+		hero.addListener(heroListener);
+	}
+
+	public void dispose() {
+		hero.removeListener(heroListener);
+		for (final Map.Entry<String, JSONListener> listener : listeners.entrySet()) {
+			hero.getObj(listener.getKey()).removeListener(listener.getValue());
+		}
+		listeners.clear();
+	}
+
+	/**
+	 * Returns the latest stamp of the subtrees containing the given paths, or -1 if one of them is not tracked
+	 */
+	public long get(final Collection<String> paths) {
+		long result = 0;
+		for (final String path : paths) {
+			final int separator = path.indexOf('/');
+			final Long stamp = stamps.get(separator < 0 ? path : path.substring(0, separator));
+			if (stamp == null) return -1;
+			result = Math.max(result, stamp);
+		}
+		return result;
+	}
+
+	public JSONObject getHero() {
+		return hero;
+	}
+
+	private void track(final String subtree) {
+		final JSONListener listener = _ -> stamps.put(subtree, ++clock);
+		stamps.put(subtree, ++clock);
+		listeners.put(subtree, listener);
+		hero.getObj(subtree).addListener(listener);
+	}
+}
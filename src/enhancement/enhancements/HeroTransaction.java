@@ -0,0 +1,189 @@
+/*
+ * Copyright 2017 DSATool team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package enhancement.enhancements;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import dsatool.util.ErrorLogger;
+import jsonant.value.JSONArray;
+import jsonant.value.JSONObject;
+import jsonant.value.JSONValue;
+
+/**
+ * Changes a copy of a hero, which has no listeners, and only writes the result back into the hero if all changes succeeded.
+ * Containers of the hero keep their identity, and every changed subtree (e.g. "Talente/Kampftalente" or "Biografie") is notified exactly once.
+ */
+public class HeroTransaction {
+
+	private static final int NOTIFICATION_DEPTH = 2;
+
+	private static boolean canMerge(final JSONArray target, final JSONArray source) {
+		for (int i = 0; i < source.size(); ++i) {
+			final Object value = source.getUnsafe(i);
+			if (i >= target.size()) {
+				if (!(value instanceof JSONValue)) return false;
+				continue;
+			}
+			final Object current = target.getUnsafe(i);
+			if (value instanceof JSONObject && current instanceof JSONObject) {
+				continue;
+			}
+			if (value instanceof final JSONArray array && current instanceof final JSONArray currentArray) {
+				if (!canMerge(currentArray, array)) return false;
+				continue;
+			}
+			if (value instanceof JSONValue || current instanceof JSONValue || !Objects.equals(value, current)) return false;
+		}
+		return true;
+	}
+
+	private static void copy(final JSONObject target, final String key, final Object value) {
+		switch (value) {
+			case final JSONObject obj -> target.put(key, obj.clone(target));
+			case final JSONArray arr -> target.put(key, arr.clone(target));
+			case final String str -> target.put(key, str);
+			case final Boolean bool -> target.put(key, bool.booleanValue());
+			case final Double dbl -> target.put(key, dbl.doubleValue());
+			case final Number num -> target.put(key, num.longValue());
+			case null, default -> target.removeKey(key);
+		}
+	}
+
+	private static boolean hasNotifiedAncestor(final JSONValue value, final Set<JSONValue> notified) {
+		for (JSONValue parent = value.getParent(); parent != null; parent = parent.getParent()) {
+			if (notified.contains(parent)) return true;
+		}
+		return false;
+	}
+
+	private static boolean merge(final JSONArray target, final JSONArray source, final int depth, final List<JSONValue> touched) {
+		boolean direct = false;
+		boolean nested = false;
+		while (target.size() > source.size()) {
+			target.removeAt(target.size() - 1);
+			direct = true;
+		}
+		for (int i = 0; i < source.size(); ++i) {
+			final Object value = source.getUnsafe(i);
+			if (i >= target.size()) {
+				target.add(((JSONValue) value).clone(target));
+				direct = true;
+			} else if (value instanceof final JSONObject obj) {
+				nested |= merge((JSONObject) target.getUnsafe(i), obj, depth - 1, touched);
+			} else if (value instanceof final JSONArray arr) {
+				nested |= merge((JSONArray) target.getUnsafe(i), arr, depth - 1, touched);
+			}
+		}
+		record(target, direct, nested, depth, touched);
+		return direct || nested;
+	}
+
+	private static boolean merge(final JSONObject target, final JSONObject source, final int depth, final List<JSONValue> touched) {
+		boolean direct = false;
+		boolean nested = false;
+		for (final String key : new ArrayList<>(target.keySet())) {
+			if (!source.containsKey(key)) {
+				target.removeKey(key);
+				direct = true;
+			}
+		}
+		for (final String key : source.keySet()) {
+			final Object value = source.getUnsafe(key);
+			final Object current = target.getUnsafe(key);
+			if (value instanceof final JSONObject obj && current instanceof final JSONObject currentObj) {
+				nested |= merge(currentObj, obj, depth - 1, touched);
+			} else if (value instanceof final JSONArray arr && current instanceof final JSONArray currentArr && canMerge(currentArr, arr)) {
+				nested |= merge(currentArr, arr, depth - 1, touched);
+			} else if (!target.containsKey(key) || value instanceof JSONValue || current instanceof JSONValue || !Objects.equals(value, current)) {
+				copy(target, key, value);
+				direct = true;
+			}
+		}
+		record(target, direct, nested, depth, touched);
+		return direct || nested;
+	}
+
+	/**
+	 * Records the container for notification if it changed itself, or if it is at the notification depth and anything below it changed
+	 */
+	private static void record(final JSONValue target, final boolean direct, final boolean nested, final int depth, final List<JSONValue> touched) {
+		if (depth > 0 && direct || depth == 0 && (direct || nested)) {
+			touched.add(target);
+		}
+	}
+
+	/**
+	 * Runs the changes on a copy of the hero and commits them, or leaves the hero untouched if they fail
+	 *
+	 * @return Whether the changes were committed
+	 */
+	public static boolean run(final JSONObject hero, final Consumer<JSONObject> changes) {
+		final HeroTransaction transaction = new HeroTransaction(hero);
+		try {
+			changes.accept(transaction.getWorkingCopy());
+		} catch (final RuntimeException e) {
+			ErrorLogger.logError(e);
+			return false;
+		}
+		transaction.commit();
+		return true;
+	}
+
+	private final JSONObject hero;
+	private final JSONObject working;
+
+	public HeroTransaction(final JSONObject hero) {
+		this.hero = hero;
+		working = hero.clone(null);
+	}
+
+	/**
+	 * Writes all changes of the working copy into the hero and then notifies each changed subtree once.
+	 * If writing fails, the hero is restored to its previous state without notifications.
+	 */
+	public void commit() {
+		final JSONObject backup = hero.clone(null);
+		final List<JSONValue> touched = new ArrayList<>();
+		try {
+			merge(hero, working, NOTIFICATION_DEPTH, touched);
+		} catch (final RuntimeException e) {
+			merge(hero, backup, NOTIFICATION_DEPTH, new ArrayList<>());
+			throw e;
+		}
+
+		final Set<JSONValue> notified = Collections.newSetFromMap(new IdentityHashMap<>());
+		notified.addAll(touched);
+		for (final JSONValue value : touched) {
+			if (!hasNotifiedAncestor(value, notified)) {
+				value.notifyListeners(null);
+			}
+		}
+	}
+
+	public JSONObject getHero() {
+		return hero;
+	}
+
+	public JSONObject getWorkingCopy() {
+		return working;
+	}
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2017 DSATool team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package enhancement.enhancements;
+
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.IntegerProperty;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.beans.property.SimpleDoubleProperty;
+import javafx.beans.property.SimpleIntegerProperty;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.StringProperty;
+import javafx.beans.value.ObservableValue;
+
+/**
+ * Plain values that only create a JavaFX property once something binds to or listens on them.
+ * Most enhancements are never shown in a table cell, so most of them never need one.
+ */
+public final class LazyValue {
+
+	public static class Bool {
+		private boolean value;
+		private BooleanProperty property;
+		private BooleanSupplier derived;
+		private Supplier<? extends ObservableValue<Boolean>> binding;
+
+		public Bool(final boolean value) {
+			this.value = value;
+		}
+
+		/**
+		 * Computes the value with derived until the property is needed, which is then bound to binding
+		 */
+		public void bind(final BooleanSupplier derived, final Supplier<? extends ObservableValue<Boolean>> binding) {
+			if (property != null) {
+				property.bind(binding.get());
+			} else {
+				this.derived = derived;
+				this.binding = binding;
+			}
+		}
+
+		public boolean get() {
+			if (property != null) return property.get();
+			if (derived != null) return derived.getAsBoolean();
+			return value;
+		}
+
+		public BooleanProperty property() {
+			if (property == null) {
+				property = new SimpleBooleanProperty(get());
+				if (binding != null) {
+					property.bind(binding.get());
+				}
+			}
+			return property;
+		}
+
+		public void set(final boolean value) {
+			if (property != null || derived != null) {
+				property().set(value);
+			} else {
+				this.value = value;
+			}
+		}
+	}
+
+	public static class Int {
+		private int value;
+		private IntegerProperty property;
+
+		public Int(final int value) {
+			this.value = value;
+		}
+
+		public int get() {
+			return property != null ? property.get() : value;
+		}
+
+		public IntegerProperty property() {
+			if (property == null) {
+				property = new SimpleIntegerProperty(value);
+			}
+			return property;
+		}
+
+		public void set(final int value) {
+			if (property != null) {
+				property.set(value);
+			} else {
+				this.value = value;
+			}
+		}
+	}
+
+	public static class Real {
+		private double value;
+		private DoubleProperty property;
+
+		public Real(final double value) {
+			this.value = value;
+		}
+
+		public double get() {
+			return property != null ? property.get() : value;
+		}
+
+		public DoubleProperty property() {
+			if (property == null) {
+				property = new SimpleDoubleProperty(value);
+			}
+			return property;
+		}
+
+		public void set(final double value) {
+			if (property != null) {
+				property.set(value);
+			} else {
+				this.value = value;
+			}
+		}
+	}
+
+	public static class Text {
+		private String value;
+		private StringProperty property;
+		private Supplier<String> derived;
+		private Supplier<? extends ObservableValue<String>> binding;
+
+		public Text(final String value) {
+			this.value = value;
+		}
+
+		/**
+		 * Computes the value with derived until the property is needed, which is then bound to binding
+		 */
+		public void bind(final Supplier<String> derived, final Supplier<? extends ObservableValue<String>> binding) {
+			if (property != null) {
+				property.bind(binding.get());
+			} else {
+				this.derived = derived;
+				this.binding = binding;
+			}
+		}
+
+		public void bind(final Text source) {
+			bind(source::get, source::property);
+		}
+
+		public String get() {
+			if (property != null) return property.get();
+			if (derived != null) return derived.get();
+			return value;
+		}
+
+		public StringProperty property() {
+			if (property == null) {
+				property = new SimpleStringProperty(get());
+				if (binding != null) {
+					property.bind(binding.get());
+				}
+			}
+			return property;
+		}
+
+		public void set(final String value) {
+			if (property != null || derived != null) {
+				property().set(value);
+			} else {
+				this.value = value;
+			}
+		}
+	}
+
+	private LazyValue() {}
+}
@@ -0,0 +1,332 @@
+/*
+ * Copyright 2017 DSATool team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package enhancement.enhancements;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import enhancement.talents.TalentEnhancement;
+import jsonant.value.JSONObject;
+
+/**
+ * Chooses the planned enhancements that fit into the available AP and silver and are worth the most for an objective.
+ * Requirements between planned enhancements are determined once against a snapshot of the hero as alternative sets,
+ * after that subsets are only compared by their AP, silver and value in a branch-and-bound search.
+ */
+public class PlanOptimizer {
+
+	private record Candidate(Enhancement enhancement, int ap, double cost, double value, List<List<Integer>> requires) {}
+
+	public enum Objective {
+		COUNT("Möglichst viele Steigerungen"), AP("Möglichst viele AP"), SES("Möglichst viele SEs");
+
+		private final String name;
+
+		Objective(final String name) {
+			this.name = name;
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	/**
+	 * The chosen enhancements, which are only the best plan found within the search limit if truncated is set
+	 */
+	public record Plan(List<Enhancement> enhancements, int ap, double cost, boolean truncated) {}
+
+	private static final int MAX_ALTERNATIVES = 4;
+	private static final long MAX_NODES = 2_000_000;
+
+	/**
+	 * Added to the value of every enhancement, so more enhancements are preferred among plans of the same value
+	 */
+	private static final double TIE_BREAK = 1e-3;
+
+	private static double getRatio(final Candidate candidate) {
+		return candidate.ap <= 0 ? Double.POSITIVE_INFINITY : candidate.value / candidate.ap;
+	}
+
+	/**
+	 * Returns the alternative sets of indices of the planned enhancements the given one requires, or null if it cannot become valid.
+	 * The first set drops the most expensive enhancements first, further sets are found by leaving out one enhancement of a known set,
+	 * so e.g. each choice of a requirement with several options gets its own set.
+	 */
+	private static List<List<Integer>> getRequirements(final List<Enhancement> planned, final int index, final JSONObject base,
+			final EnhancementSettings settings) {
+		final Enhancement enhancement = planned.get(index);
+		if (isValid(enhancement, base, List.of(), settings)) return List.of(List.of());
+
+		final List<Integer> related = new ArrayList<>();
+		for (int i = 0; i < planned.size(); ++i) {
+			if (i != index && DependencyGraph.intersects(planned.get(i).getModifiedPaths(), enhancement.getDependencies())) {
+				related.add(i);
+			}
+		}
+		related.sort(Comparator.comparingInt((final Integer i) -> planned.get(i).getAP()).reversed());
+		if (related.isEmpty() || !isValid(enhancement, base, toEnhancements(planned, related), settings)) return null;
+
+		final List<List<Integer>> alternatives = new ArrayList<>();
+		alternatives.add(minimize(planned, enhancement, related, base, settings));
+		for (int i = 0; i < alternatives.size() && alternatives.size() < MAX_ALTERNATIVES; ++i) {
+			for (final Integer left : alternatives.get(i)) {
+				final List<Integer> remaining = new ArrayList<>(related);
+				remaining.remove(left);
+				if (isValid(enhancement, base, toEnhancements(planned, remaining), settings)) {
+					final List<Integer> alternative = minimize(planned, enhancement, remaining, base, settings);
+					if (!alternatives.contains(alternative)) {
+						alternatives.add(alternative);
+						if (alternatives.size() == MAX_ALTERNATIVES) {
+							break;
+						}
+					}
+				}
+			}
+		}
+		return alternatives;
+	}
+
+	private static double getValue(final Enhancement enhancement, final Objective objective) {
+		return TIE_BREAK + switch (objective) {
+			case COUNT -> 1;
+			case AP -> Math.max(enhancement.getAP(), 0);
+			case SES -> enhancement instanceof final TalentEnhancement talent
+					? Math.max(Math.min(talent.getSes(), talent.getTarget() - talent.getStart()), 0) : 0;
+		};
+	}
+
+	private static boolean isValid(final Enhancement enhancement, final JSONObject base, final List<Enhancement> applied,
+			final EnhancementSettings settings) {
+		final JSONObject hero = base.clone(null);
+		for (final Enhancement required : applied) {
+			required.applyTemporarily(hero);
+		}
+		return enhancement.calculateValid(hero, settings);
+	}
+
+	/**
+	 * Drops the enhancements the given one does not need from the valid set in the given order
+	 *
+	 * @return The remaining indices in ascending order
+	 */
+	private static List<Integer> minimize(final List<Enhancement> planned, final Enhancement enhancement, final List<Integer> valid,
+			final JSONObject base, final EnhancementSettings settings) {
+		final List<Integer> result = new ArrayList<>(valid);
+		for (final Integer candidate : valid) {
+			result.remove(candidate);
+			if (!isValid(enhancement, base, toEnhancements(planned, result), settings)) {
+				result.add(candidate);
+			}
+		}
+		Collections.sort(result);
+		return result;
+	}
+
+	/**
+	 * Finds the best plan for the planned enhancements of the hero, with the pending enhancements already deducted from the budget.
+	 * An invalid enhancement requires one of a few minimal sets of other planned enhancements that write to its dependencies and make it valid,
+	 * enhancements that stay invalid are never chosen.
+	 *
+	 * @param planned
+	 *            The planned enhancements in the order they were planned
+	 * @return The chosen enhancements in an order that satisfies their requirements
+	 */
+	public static Plan optimize(final JSONObject hero, final List<Enhancement> planned, final Objective objective) {
+		final EnhancementController controller = EnhancementController.instance;
+		final EnhancementSettings settings = EnhancementSettings.get();
+		int apBudget = hero.getObj("Biografie").getIntOrDefault("Abenteuerpunkte-Guthaben", 0);
+		double costBudget = settings.teacherCosts() ? EnhancementController.getAvailableMoney(hero) : Double.POSITIVE_INFINITY;
+		for (final Enhancement pending : controller.getEnhancements()) {
+			apBudget -= pending.getAP();
+			costBudget -= pending.getCost();
+		}
+
+		JSONObject base = controller.createSnapshot(hero);
+		if (base == null) {
+			base = hero.clone(null);
+		}
+
+		final List<List<List<Integer>>> requires = new ArrayList<>(planned.size());
+		for (int i = 0; i < planned.size(); ++i) {
+			requires.add(getRequirements(planned, i, base, settings));
+		}
+
+		final List<Integer> order = sortTopologically(requires);
+		final int[] positions = new int[planned.size()];
+		Arrays.fill(positions, -1);
+		for (int i = 0; i < order.size(); ++i) {
+			positions[order.get(i)] = i;
+		}
+
+		final Candidate[] candidates = new Candidate[order.size()];
+		for (int i = 0; i < order.size(); ++i) {
+			final Enhancement enhancement = planned.get(order.get(i));
+			final List<List<Integer>> alternatives = new ArrayList<>();
+			alternatives: for (final List<Integer> alternative : requires.get(order.get(i))) {
+				final List<Integer> required = new ArrayList<>(alternative.size());
+				for (final int requirement : alternative) {
+					if (positions[requirement] < 0 || positions[requirement] > i) {
+						continue alternatives;
+					}
+					required.add(positions[requirement]);
+				}
+				alternatives.add(required);
+			}
+			candidates[i] = new Candidate(enhancement, enhancement.getAP(), enhancement.getCost(), getValue(enhancement, objective), alternatives);
+		}
+
+		return new PlanOptimizer(candidates, apBudget, costBudget).search();
+	}
+
+	/**
+	 * Orders the enhancements so each one comes after one of its alternative requirements,
+	 * dropping those that cannot become valid or require each other
+	 */
+	private static List<Integer> sortTopologically(final List<List<List<Integer>>> requires) {
+		final List<Integer> order = new ArrayList<>(requires.size());
+		final boolean[] done = new boolean[requires.size()];
+		boolean progress = true;
+		while (progress) {
+			progress = false;
+			for (int i = 0; i < requires.size(); ++i) {
+				if (done[i] || requires.get(i) == null) {
+					continue;
+				}
+				alternatives: for (final List<Integer> alternative : requires.get(i)) {
+					for (final int requirement : alternative) {
+						if (!done[requirement]) {
+							continue alternatives;
+						}
+					}
+					done[i] = true;
+					order.add(i);
+					progress = true;
+					break;
+				}
+			}
+		}
+		return order;
+	}
+
+	private static List<Enhancement> toEnhancements(final List<Enhancement> planned, final List<Integer> indices) {
+		return indices.stream().map(planned::get).toList();
+	}
+
+	private final Candidate[] candidates;
+	private final int apBudget;
+	private final double costBudget;
+	private final Integer[] byRatio;
+	private final boolean[] chosen;
+
+	private boolean[] best;
+	private double bestValue = -1;
+	private long nodes = 0;
+
+	private PlanOptimizer(final Candidate[] candidates, final int apBudget, final double costBudget) {
+		this.candidates = candidates;
+		this.apBudget = apBudget;
+		this.costBudget = costBudget;
+		chosen = new boolean[candidates.length];
+		best = new boolean[candidates.length];
+		byRatio = new Integer[candidates.length];
+		for (int i = 0; i < candidates.length; ++i) {
+			byRatio[i] = i;
+		}
+		Arrays.sort(byRatio, (a, b) -> Double.compare(getRatio(candidates[b]), getRatio(candidates[a])));
+	}
+
+	/**
+	 * The value the candidates from the given depth on can add at most, if they could be taken partially
+	 */
+	private double bound(final int depth, final int remainingAP) {
+		double result = 0;
+		int remaining = remainingAP;
+		for (final int i : byRatio) {
+			if (i < depth) {
+				continue;
+			}
+			final Candidate candidate = candidates[i];
+			if (candidate.ap <= 0) {
+				result += candidate.value;
+			} else if (candidate.ap <= remaining) {
+				result += candidate.value;
+				remaining -= candidate.ap;
+			} else {
+				return result + candidate.value * remaining / candidate.ap;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Whether all enhancements of one of the alternative requirements of the candidate are chosen
+	 */
+	private boolean isAvailable(final Candidate candidate) {
+		alternatives: for (final List<Integer> alternative : candidate.requires) {
+			for (final int requirement : alternative) {
+				if (!chosen[requirement]) {
+					continue alternatives;
+				}
+			}
+			return true;
+		}
+		return false;
+	}
+
+	private Plan search() {
+		if (apBudget >= 0 && costBudget >= 0) {
+			search(0, 0, 0, 0);
+		}
+
+		final List<Enhancement> result = new ArrayList<>();
+		int ap = 0;
+		double cost = 0;
+		for (int i = 0; i < candidates.length; ++i) {
+			if (best[i]) {
+				result.add(candidates[i].enhancement);
+				ap += candidates[i].ap;
+				cost += candidates[i].cost;
+			}
+		}
+		return new Plan(result, ap, cost, nodes > MAX_NODES);
+	}
+
+	/**
+	 * Decides for the candidate at the given depth whether it is taken, taking it first so good plans are found early.
+	 * Gives up after a fixed number of nodes and keeps the best plan found until then.
+	 */
+	private void search(final int depth, final int ap, final double cost, final double value) {
+		if (value > bestValue) {
+			bestValue = value;
+			best = chosen.clone();
+		}
+		if (depth == candidates.length || ++nodes > MAX_NODES) return;
+		if (value + bound(depth, apBudget - ap) <= bestValue) return;
+
+		final Candidate candidate = candidates[depth];
+		if (ap + candidate.ap <= apBudget && cost + candidate.cost <= costBudget && isAvailable(candidate)) {
+			chosen[depth] = true;
+			search(depth + 1, ap + candidate.ap, cost + candidate.cost, value + candidate.value);
+			chosen[depth] = false;
+		}
+		search(depth + 1, ap, cost, value);
+	}
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright 2017 DSATool team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package enhancement.enhancements;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import dsa41basis.util.HeroUtil;
+import enhancement.education.EducationEnhancement;
+import enhancement.skills.SkillEnhancement;
+import enhancement.talents.TalentEnhancement;
+import jsonant.value.JSONArray;
+import jsonant.value.JSONObject;
+
+/**
+ * Finds the cheapest raises that fulfill the requirements of an invalid talent, special skill or education.
+ * The requirement tree is expanded into alternative sets of goals, skipping every subtree the pending hero already fulfills,
+ * and each set is planned by the {@link ChainPlanner} and only accepted if it actually makes the enhancement valid.
+ */
+public class PrerequisiteResolver {
+
+	private record Goals(Map<String, Integer> values, Set<String> skills) {
+		private static final Goals NONE = new Goals(Map.of(), Set.of());
+
+		private static Goals of(final String name, final int value) {
+			return new Goals(Map.of(name, value), Set.of());
+		}
+
+		private static Goals skill(final String name) {
+			return new Goals(Map.of(), Set.of(name));
+		}
+
+		private Goals merge(final Goals other) {
+			final Map<String, Integer> mergedValues = new LinkedHashMap<>(values);
+			other.values.forEach((name, value) -> mergedValues.merge(name, value, Math::max));
+			final Set<String> mergedSkills = new LinkedHashSet<>(skills);
+			mergedSkills.addAll(other.skills);
+			return new Goals(mergedValues, mergedSkills);
+		}
+
+		private int size() {
+			return values.size() + skills.size();
+		}
+
+		@Override
+		public String toString() {
+			final List<String> goals = new ArrayList<>();
+			values.forEach((name, value) -> goals.add(name + ' ' + value));
+			goals.addAll(skills);
+			return String.join(", ", goals);
+		}
+	}
+
+	private static final int MAX_ALTERNATIVES = 16;
+	private static final int MAX_DEPTH = 4;
+
+	private static List<Goals> combine(final List<Goals> first, final List<Goals> second) {
+		final List<Goals> result = new ArrayList<>(first.size() * second.size());
+		for (final Goals left : first) {
+			for (final Goals right : second) {
+				final Goals merged = left.merge(right);
+				if (!result.contains(merged)) {
+					result.add(merged);
+				}
+			}
+		}
+		return limit(result);
+	}
+
+	private static boolean fulfills(final Enhancement enhancement, final JSONObject hero, final ChainPlanner.Plan plan) {
+		final JSONObject snapshot = ChainPlanner.snapshot(hero);
+		final List<Enhancement> raises = plan.createEnhancements(hero);
+		try {
+			for (final Enhancement raise : raises) {
+				raise.applyTemporarily(snapshot);
+			}
+			return enhancement.calculateValid(snapshot, EnhancementSettings.get());
+		} finally {
+			raises.forEach(ChainPlanner::unregister);
+		}
+	}
+
+	/**
+	 * Keeps the alternatives with the fewest goals, as those are usually the cheapest
+	 */
+	private static List<Goals> limit(final List<Goals> alternatives) {
+		alternatives.sort(Comparator.comparingInt(Goals::size));
+		return alternatives.size() > MAX_ALTERNATIVES ? new ArrayList<>(alternatives.subList(0, MAX_ALTERNATIVES)) : alternatives;
+	}
+
+	/**
+	 * Finds the raises with the fewest AP that make the enhancement valid for the hero with all pending enhancements applied
+	 *
+	 * @return The raises in the order they have to be applied, or null if the requirements cannot be fulfilled by raises
+	 */
+	public static ChainPlanner.Plan resolve(final JSONObject hero, final Enhancement enhancement) {
+		final Object requirements;
+		final int level;
+		switch (enhancement) {
+			case final TalentEnhancement talent -> {
+				requirements = talent.getTalent().getTalent().getUnsafe("Voraussetzungen");
+				level = talent.getTarget();
+			}
+			case final SkillEnhancement skill -> {
+				requirements = skill.getSkill().getProOrCon().getUnsafe("Voraussetzungen");
+				level = skill.getSkill().getActual().getIntOrDefault("Stufe", 0);
+			}
+			case final EducationEnhancement education -> {
+				requirements = education.getEducation().getProOrCon().getUnsafe("Voraussetzungen");
+				level = 0;
+			}
+			default -> {
+				return null;
+			}
+		}
+
+		final List<Goals> alternatives = new PrerequisiteResolver(ChainPlanner.snapshot(hero)).expand(requirements, level, 0);
+
+		ChainPlanner.Plan best = null;
+		for (final Goals goals : alternatives) {
+			if (goals.size() == 0) {
+				continue;
+			}
+			final ChainPlanner.Plan plan;
+			try {
+				plan = ChainPlanner.plan(hero, goals.toString());
+			} catch (final IllegalArgumentException e) {
+				continue;
+			}
+			if (plan != null && !plan.entries().isEmpty() && (best == null || plan.ap() < best.ap()) && fulfills(enhancement, hero, plan)) {
+				best = plan;
+			}
+		}
+		return best;
+	}
+
+	private final JSONObject pending;
+
+	private final Map<Object, Map<Integer, List<Goals>>> expansions = new IdentityHashMap<>();
+
+	private PrerequisiteResolver(final JSONObject pending) {
+		this.pending = pending;
+	}
+
+	/**
+	 * Returns the alternative sets of goals that fulfill the requirements, or an empty list if raises cannot fulfill them.
+	 * Requirements from the data files are checked with their compiled predicate first, so fulfilled subtrees are not expanded.
+	 */
+	private List<Goals> expand(final Object requirements, final int level, final int depth) {
+		if (requirements == null) return List.of(Goals.NONE);
+		final Map<Integer, List<Goals>> byLevel = expansions.computeIfAbsent(requirements, _ -> new HashMap<>());
+		if (!byLevel.containsKey(level)) {
+			if (RequirementPredicate.compile(requirements).evaluate(pending, level).isFulfilled()) {
+				byLevel.put(level, List.of(Goals.NONE));
+			} else {
+				if (depth > MAX_DEPTH) return List.of();
+				byLevel.put(level, expandUncached(requirements, level, depth));
+			}
+		}
+		return byLevel.get(level);
+	}
+
+	private List<Goals> expandChoice(final Object choices, final int level, final int depth) {
+		final List<Goals> result = new ArrayList<>();
+		if (choices instanceof final JSONArray array) {
+			for (final JSONObject choice : array.getObjs()) {
+				for (final Goals goals : expand(choice, level, depth + 1)) {
+					if (!result.contains(goals)) {
+						result.add(goals);
+					}
+				}
+			}
+		} else if (choices instanceof final JSONObject choice) {
+			result.addAll(expand(choice, level, depth + 1));
+		}
+		return limit(result);
+	}
+
+	/**
+	 * Expands the named advantages, disadvantages and special skills, of which only special skills can be learned
+	 */
+	private List<Goals> expandProsConsSkills(final JSONObject required, final int depth) {
+		List<Goals> result = List.of(Goals.NONE);
+		for (final String name : required.keySet()) {
+			switch (name) {
+				case "Muss" -> {
+					if (required.getUnsafe(name) instanceof final JSONObject mandatory) {
+						result = combine(result, expandProsConsSkills(mandatory, depth));
+					}
+				}
+				case "Wahl" -> {
+					final List<Goals> choices = new ArrayList<>();
+					if (required.getUnsafe(name) instanceof final JSONObject choice) {
+						for (final String choiceName : choice.keySet()) {
+							choices.addAll(expandSkill(choiceName, depth));
+						}
+					} else if (required.getUnsafe(name) instanceof final JSONArray choice) {
+						for (final JSONObject single : choice.getObjs()) {
+							choices.addAll(expandProsConsSkills(single, depth));
+						}
+					}
+					result = combine(result, limit(choices));
+				}
+				case "Nicht" -> {}
+				default -> result = combine(result, expandSkill(name, depth));
+			}
+			if (result.isEmpty()) return result;
+		}
+		return result;
+	}
+
+	private List<Goals> expandSkill(final String name, final int depth) {
+		if (pending.getObj("Sonderfertigkeiten").containsKey(name) || pending.getObj("Vorteile").containsKey(name)) return List.of(Goals.NONE);
+		final JSONObject skill = HeroUtil.findSkill(name);
+		if (skill == null || skill.containsKey("Auswahl") || skill.containsKey("Freitext")) return List.of();
+		return combine(List.of(Goals.skill(name)), expand(skill.getUnsafe("Voraussetzungen"), 0, depth + 1));
+	}
+
+	private List<Goals> expandUncached(final Object requirements, final int level, final int depth) {
+		List<Goals> result = List.of(Goals.NONE);
+		if (requirements instanceof final JSONArray array) {
+			for (final JSONObject requirement : array.getObjs()) {
+				result = combine(result, expand(requirement, level, depth + 1));
+				if (result.isEmpty()) return result;
+			}
+			return result;
+		}
+		if (!(requirements instanceof final JSONObject requirement)) return result;
+		if (requirement.containsKey("Ab") && level <= requirement.getInt("Ab")) return result;
+
+		for (final String key : requirement.keySet()) {
+			final Object value = requirement.getUnsafe(key);
+			switch (key) {
+				case "Ab", "Auswahl", "Freitext", "Nicht" -> {}
+				case "Muss" -> result = combine(result, expand(value, level, depth + 1));
+				case "Wahl" -> result = combine(result, expandChoice(value, level, depth));
+				case "Eigenschaften", "Talente" -> {
+					if (value instanceof final JSONObject named) {
+						for (final String name : named.keySet()) {
+							if (named.getUnsafe(name) instanceof final Number number) {
+								result = combine(result, List.of(Goals.of(name, number.intValue())));
+							} else {
+								result = List.of();
+							}
+						}
+					} else {
+						result = List.of();
+					}
+				}
+				case "Vorteile/Nachteile/Sonderfertigkeiten" -> {
+					if (value instanceof final JSONObject named) {
+						result = combine(result, expandProsConsSkills(named, depth));
+					} else {
+						result = List.of();
+					}
+				}
+				default -> result = List.of();
+			}
+			if (result.isEmpty()) return result;
+		}
+		return result;
+	}
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2017 DSATool team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package enhancement.enhancements;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+import javafx.application.Platform;
+
+/**
+ * Merges all recalculation requests made until the FX thread is idle again into a single recalculation
+ */
+public class RecalculationScheduler {
+
+	private final BiConsumer<Boolean, Collection<String>> recalculation;
+
+	private boolean scheduled = false;
+	private boolean recalculateValid = false;
+	private final Set<String> touched = new HashSet<>();
+
+	public RecalculationScheduler(final BiConsumer<Boolean, Collection<String>> recalculation) {
+		this.recalculation = recalculation;
+	}
+
+	public void flush() {
+		if (!scheduled) return;
+		final boolean valid = recalculateValid;
+		final Set<String> paths = new HashSet<>(touched);
+		scheduled = false;
+		recalculateValid = false;
+		touched.clear();
+		recalculation.accept(valid, paths);
+	}
+
+	public void schedule(final boolean recalculateValid, final Collection<String> touched) {
+		this.recalculateValid |= recalculateValid;
+		this.touched.addAll(touched);
+		if (!scheduled) {
+			scheduled = true;
+			Platform.runLater(this::flush);
+		}
+	}
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2017 DSATool team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package enhancement.enhancements;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import dsa41basis.util.RequirementsUtil;
+import jsonant.value.JSONArray;
+import jsonant.value.JSONObject;
+
+/**
+ * A requirement from the data files, compiled once into a tree of checks.
+ * Only arrays of requirements and the levels from which a requirement applies are resolved by the tree,
+ * every requirement object is checked by {@link RequirementsUtil} as a whole, so validity and explanations are the same as without the tree.
+ * An evaluation remembers the failed checks, so the explanation needs no second pass over the fulfilled ones.
+ */
+public abstract class RequirementPredicate {
+
+	private static class All extends RequirementPredicate {
+		private final List<RequirementPredicate> children;
+
+		private All(final List<RequirementPredicate> children) {
+			this.children = children;
+		}
+
+		@Override
+		protected boolean evaluate(final JSONObject hero, final int level, final List<Check> failed) {
+			boolean fulfilled = true;
+			for (final RequirementPredicate child : children) {
+				fulfilled &= child.evaluate(hero, level, failed);
+			}
+			return fulfilled;
+		}
+	}
+
+	private static class Check extends RequirementPredicate {
+		private final JSONObject requirement;
+
+		private Check(final JSONObject requirement) {
+			this.requirement = requirement;
+		}
+
+		private String describe(final JSONObject hero) {
+			return RequirementsUtil.unfulfilledRequirements(hero, requirement, null, null, false);
+		}
+
+		@Override
+		protected boolean evaluate(final JSONObject hero, final int level, final List<Check> failed) {
+			if (RequirementsUtil.isRequirementFulfilled(hero, requirement, null, null, false)) return true;
+			failed.add(this);
+			return false;
+		}
+	}
+
+	public static class Evaluation {
+		private final JSONObject hero;
+		private final int level;
+		private final List<Check> failed;
+
+		private Evaluation(final JSONObject hero, final int level, final List<Check> failed) {
+			this.hero = hero;
+			this.level = level;
+			this.failed = failed;
+		}
+
+		public JSONObject getHero() {
+			return hero;
+		}
+
+		public int getLevel() {
+			return level;
+		}
+
+		public List<String> getUnfulfilled() {
+			final List<String> unfulfilled = new ArrayList<>(failed.size());
+			for (final Check check : failed) {
+				unfulfilled.add(check.describe(hero));
+			}
+			return unfulfilled;
+		}
+
+		public boolean isFulfilled() {
+			return failed.isEmpty();
+		}
+	}
+
+	private static class FromLevel extends RequirementPredicate {
+		private final int threshold;
+		private final RequirementPredicate child;
+
+		private FromLevel(final int threshold, final RequirementPredicate child) {
+			this.threshold = threshold;
+			this.child = child;
+		}
+
+		@Override
+		protected boolean evaluate(final JSONObject hero, final int level, final List<Check> failed) {
+			return level <= threshold || child.evaluate(hero, level, failed);
+		}
+	}
+
+	private static final RequirementPredicate NONE = new All(List.of());
+
+	/**
+	 * More requirement objects than the data files contain, so the cache is only cleared if stale objects pile up
+	 */
+	private static final int MAX_CACHED = 8192;
+
+	private static final Map<Object, RequirementPredicate> cache = new IdentityHashMap<>();
+
+	public static void clearCache() {
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+
+	/**
+	 * Compiles a requirement object or an array of requirement objects, which may be restricted to levels above "Ab"
+	 */
+	public static RequirementPredicate compile(final Object requirements) {
+		if (requirements == null) return NONE;
+		synchronized (cache) {
+			RequirementPredicate predicate = cache.get(requirements);
+			if (predicate == null) {
+				if (cache.size() >= MAX_CACHED) {
+					cache.clear();
+				}
+				predicate = compileUncached(requirements);
+				cache.put(requirements, predicate);
+			}
+			return predicate;
+		}
+	}
+
+	private static RequirementPredicate compileUncached(final Object requirements) {
+		switch (requirements) {
+			case final JSONArray array -> {
+				final List<RequirementPredicate> children = new ArrayList<>(array.size());
+				for (final JSONObject requirement : array.getObjs()) {
+					children.add(compileUncached(requirement));
+				}
+				return new All(children);
+			}
+			case final JSONObject requirement -> {
+				final RequirementPredicate check = new Check(requirement);
+				return requirement.containsKey("Ab") ? new FromLevel(requirement.getInt("Ab"), check) : check;
+			}
+			default -> {
+				return NONE;
+			}
+		}
+	}
+
+	protected abstract boolean evaluate(JSONObject hero, int level, List<Check> failed);
+
+	public Evaluation evaluate(final JSONObject hero, final int level) {
+		final List<Check> failed = new ArrayList<>();
+		evaluate(hero, level, failed);
+		return new Evaluation(hero, level, failed);
+	}
+}
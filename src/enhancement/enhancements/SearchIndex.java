@@ -0,0 +1,156 @@
+/*
+ * Copyright 2017 DSATool team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package enhancement.enhancements;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * A substring search over the descriptions of rows, keyed by identity (e.g. the JSON entry of a row).
+ * Texts are normalized once, queries of three or more characters only look at rows sharing all their trigrams,
+ * and a query that extends the previous one only looks at the previous result.
+ */
+public class SearchIndex<K> {
+
+	private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+	public static String normalize(final String text) {
+		if (text == null) return "";
+		final String folded = text.toLowerCase(Locale.GERMAN).replace("ä", "ae").replace("ö", "oe").replace("ü", "ue").replace("ß", "ss");
+		return COMBINING_MARKS.matcher(Normalizer.normalize(folded, Normalizer.Form.NFD)).replaceAll("");
+	}
+
+	private static Set<String> trigrams(final String text) {
+		final Set<String> result = new HashSet<>();
+		for (int i = 0; i + 3 <= text.length(); ++i) {
+			result.add(text.substring(i, i + 3));
+		}
+		return result;
+	}
+
+	private final Map<K, String> texts = new IdentityHashMap<>();
+	private final Map<String, Set<K>> postings = new HashMap<>();
+
+	private String lastQuery;
+	private Set<K> lastResult;
+
+	public void add(final K key, final String text) {
+		remove(key);
+		final String normalized = normalize(text);
+		texts.put(key, normalized);
+		for (final String trigram : trigrams(normalized)) {
+			postings.computeIfAbsent(trigram, _ -> Collections.newSetFromMap(new IdentityHashMap<>())).add(key);
+		}
+		if (lastResult != null && normalized.contains(lastQuery)) {
+			lastResult.add(key);
+		}
+	}
+
+	public void clear() {
+		texts.clear();
+		postings.clear();
+		lastQuery = null;
+		lastResult = null;
+	}
+
+	public boolean contains(final K key) {
+		return texts.containsKey(key);
+	}
+
+	public Set<K> keys() {
+		return Collections.unmodifiableSet(texts.keySet());
+	}
+
+	/**
+	 * Returns a predicate for the keys matching the query, which is evaluated only once per query
+	 */
+	public Predicate<K> matcher(final String query) {
+		final Set<K> result = search(query);
+		if (result == null) return _ -> true;
+		final Set<K> matches = Collections.newSetFromMap(new IdentityHashMap<>());
+		matches.addAll(result);
+		return matches::contains;
+	}
+
+	public void remove(final K key) {
+		final String text = texts.remove(key);
+		if (text == null) return;
+		for (final String trigram : trigrams(text)) {
+			final Set<K> keys = postings.get(trigram);
+			if (keys != null) {
+				keys.remove(key);
+				if (keys.isEmpty()) {
+					postings.remove(trigram);
+				}
+			}
+		}
+		if (lastResult != null) {
+			lastResult.remove(key);
+		}
+	}
+
+	/**
+	 * Returns the keys whose text contains the query, or null if the query is empty and everything matches
+	 */
+	public Set<K> search(final String query) {
+		final String normalized = normalize(query);
+		if (normalized.isEmpty()) {
+			lastQuery = null;
+			lastResult = null;
+			return null;
+		}
+
+		final Collection<K> candidates;
+		if (lastQuery != null && normalized.contains(lastQuery)) {
+			candidates = lastResult;
+		} else if (normalized.length() >= 3) {
+			final List<Set<K>> lists = new ArrayList<>();
+			for (final String trigram : trigrams(normalized)) {
+				final Set<K> keys = postings.get(trigram);
+				if (keys == null) {
+					lists.clear();
+					break;
+				}
+				lists.add(keys);
+			}
+			lists.sort((a, b) -> Integer.compare(a.size(), b.size()));
+			candidates = lists.isEmpty() ? List.of() : lists.get(0);
+		} else {
+			candidates = texts.keySet();
+		}
+
+		final Set<K> result = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (final K key : candidates) {
+			if (texts.get(key).contains(normalized)) {
+				result.add(key);
+			}
+		}
+		lastQuery = normalized;
+		lastResult = result;
+		return result;
+	}
+}
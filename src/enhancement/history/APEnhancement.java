@@ -19,6 +19,7 @@ import java.time.LocalDate;
 import java.util.Collection;
 
 import enhancement.enhancements.Enhancement;
+import enhancement.enhancements.EnhancementSettings;
 import jsonant.value.JSONObject;
 import jsonant.value.JSONValue;
 
@@ -48,7 +49,7 @@ public class APEnhancement extends Enhancement {
 	public void applyTemporarily(final JSONObject hero) {}
 
 	@Override
-	protected boolean calculateValid(final JSONObject hero) {
+	protected boolean calculateValid(final JSONObject hero, final EnhancementSettings settings) {
 		return true;
 	}
 
@@ -65,10 +66,10 @@ public class APEnhancement extends Enhancement {
 	/*
 	 * (non-Javadoc)
 	 *
-	 * @see enhancement.enhancements.Enhancement#getCalculatedCost(jsonant.value.JSONObject)
+	 * @see enhancement.enhancements.Enhancement#getCalculatedCost(jsonant.value.JSONObject, enhancement.enhancements.EnhancementSettings)
 	 */
 	@Override
-	protected double getCalculatedCost(final JSONObject hero) {
+	protected double getCalculatedCost(final JSONObject hero, final EnhancementSettings settings) {
 		return 0;
 	}
 
@@ -93,7 +94,4 @@ public class APEnhancement extends Enhancement {
 		bio.put("Abenteuerpunkte", start);
 		bio.notifyListeners(null);
 	}
-
-	@Override
-	public void unapplyTemporary(final JSONObject hero) {}
 }
@@ -28,6 +28,7 @@ import dsatool.resources.ResourceManager;
 import dsatool.util.Tuple;
 import dsatool.util.Tuple3;
 import enhancement.enhancements.Enhancement;
+import enhancement.enhancements.EnhancementSettings;
 import javafx.beans.binding.Bindings;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
@@ -93,7 +94,7 @@ public class AdventureEnhancement extends Enhancement {
 		this.actual = actual;
 		ses = FXCollections.observableArrayList();
 		notes = new SimpleStringProperty("");
-		fullDescription.bind(Bindings.concat("Abenteuer: ", description));
+		fullDescription.bind(() -> "Abenteuer: " + description.get(), () -> Bindings.concat("Abenteuer: ", description.property()));
 	}
 
 	@Override
@@ -114,7 +115,7 @@ public class AdventureEnhancement extends Enhancement {
 	public void applyTemporarily(final JSONObject hero) {}
 
 	@Override
-	protected boolean calculateValid(final JSONObject hero) {
+	protected boolean calculateValid(final JSONObject hero, final EnhancementSettings settings) {
 		return true;
 	}
 
@@ -125,12 +126,12 @@ public class AdventureEnhancement extends Enhancement {
 
 	@Override
 	public StringProperty dateProperty() {
-		return date;
+		return date.property();
 	}
 
 	@Override
 	public StringProperty descriptionProperty() {
-		return description;
+		return description.property();
 	}
 
 	public JSONObject getActual() {
@@ -143,7 +144,7 @@ public class AdventureEnhancement extends Enhancement {
 	}
 
 	@Override
-	protected double getCalculatedCost(final JSONObject hero) {
+	protected double getCalculatedCost(final JSONObject hero, final EnhancementSettings settings) {
 		return -cost.get();
 	}
 
@@ -268,7 +269,4 @@ public class AdventureEnhancement extends Enhancement {
 		}
 	}
 
-	@Override
-	public void unapplyTemporary(final JSONObject hero) {}
-
 }
@@ -15,25 +15,25 @@
  */
 package enhancement.history;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
 import dsa41basis.util.HeroUtil;
 import dsatool.gui.GUIUtil;
 import dsatool.gui.ThemedAlert;
-import dsatool.resources.Settings;
 import dsatool.util.ErrorLogger;
-import enhancement.attributes.AttributeEnhancement;
-import enhancement.attributes.EnergyEnhancement;
-import enhancement.education.EducationEnhancement;
 import enhancement.enhancements.Enhancement;
 import enhancement.enhancements.EnhancementController;
+import enhancement.enhancements.EnhancementSettings;
 import enhancement.enhancements.EnhancementTabController;
-import enhancement.pros_cons.QuirkEnhancement;
-import enhancement.skills.SkillEnhancement;
-import enhancement.talents.SpellEnhancement;
-import enhancement.talents.TalentEnhancement;
+import enhancement.enhancements.HeroTransaction;
+import enhancement.enhancements.SearchIndex;
 import javafx.beans.binding.Bindings;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
-import javafx.collections.transformation.FilteredList;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Node;
@@ -55,21 +55,26 @@ public class HistoryController extends EnhancementTabController {
 	@FXML
 	private VBox root;
 	@FXML
-	private TableView<Enhancement> table;
+	private TableView<HistoryEntry> table;
 	@FXML
-	private TableColumn<Enhancement, String> descriptionColumn;
+	private TableColumn<HistoryEntry, String> descriptionColumn;
 	@FXML
-	private TableColumn<Enhancement, Double> costColumn;
+	private TableColumn<HistoryEntry, Double> costColumn;
 	@FXML
-	private TableColumn<Enhancement, Integer> apColumn;
+	private TableColumn<HistoryEntry, Integer> apColumn;
 	@FXML
-	private TableColumn<Enhancement, String> dateColumn;
+	private TableColumn<HistoryEntry, String> dateColumn;
 	@FXML
 	private TextField filter;
 
 	private final EnhancementController controller;
 
-	private final ObservableList<Enhancement> items = FXCollections.observableArrayList();
+	private final HistoryList items = new HistoryList();
+	private final ObservableList<HistoryEntry> matches = FXCollections.observableArrayList();
+	private final List<Integer> matchIndices = new ArrayList<>();
+	private final HistoryLedger ledger = new HistoryLedger();
+	private final SearchIndex<JSONObject> searchIndex = new SearchIndex<>();
+	private boolean searchIndexOutdated = true;
 
 	public HistoryController(final EnhancementController controller, final TabPane tabPane) {
 		super(tabPane);
@@ -77,6 +82,39 @@ public class HistoryController extends EnhancementTabController {
 		this.controller = controller;
 	}
 
+	/**
+	 * Shows all entries through the lazy history list, or only the entries matching the filter.
+	 * Matches are determined on the entries in "Historie", so only the matching rows are created.
+	 */
+	private void applyFilter() {
+		final String text = filter.getText();
+		if (text == null || text.isEmpty()) {
+			matches.clear();
+			matchIndices.clear();
+			if (table.getItems() != items) {
+				table.setItems(items);
+			}
+			return;
+		}
+		if (searchIndexOutdated) {
+			updateSearchIndex();
+		}
+		final Set<JSONObject> found = searchIndex.search(text);
+		final List<HistoryEntry> rows = new ArrayList<>();
+		matchIndices.clear();
+		final JSONArray history = hero != null ? hero.getArr("Historie") : null;
+		for (int i = 0; history != null && found != null && i < items.size(); ++i) {
+			if (found.contains(history.getObj(history.size() - 1 - i))) {
+				matchIndices.add(i);
+				rows.add(items.get(i));
+			}
+		}
+		matches.setAll(rows);
+		if (table.getItems() != matches) {
+			table.setItems(matches);
+		}
+	}
+
 	@Override
 	protected Node getControl() {
 		return root;
@@ -101,7 +139,7 @@ public class HistoryController extends EnhancementTabController {
 
 		table.prefWidthProperty().bind(root.widthProperty().subtract(20));
 
-		if (!Settings.getSettingBoolOrDefault(true, "Steigerung", "Lehrmeisterkosten")) {
+		if (!EnhancementSettings.get().teacherCosts()) {
 			costColumn.setMinWidth(0);
 			costColumn.setPrefWidth(0);
 			costColumn.setMaxWidth(0);
@@ -110,34 +148,31 @@ public class HistoryController extends EnhancementTabController {
 		GUIUtil.cellValueFactories(table, "fullDescription", "cost", "ap", "date");
 
 		table.setRowFactory(_ -> {
-			final TableRow<Enhancement> row = new TableRow<>();
+			final TableRow<HistoryEntry> row = new TableRow<>();
 
 			final ContextMenu contextMenu = new ContextMenu();
 
 			final MenuItem editItem = new MenuItem("Bearbeiten");
 			contextMenu.getItems().add(editItem);
 			editItem.setOnAction(_ -> {
-				new AdventureDialog(root.getScene().getWindow(), hero, ((AdventureEnhancement) row.getItem()).getActual());
+				new AdventureDialog(root.getScene().getWindow(), hero, row.getItem().getEntry());
 			});
 			editItem.visibleProperty()
-					.bind(Bindings.createBooleanBinding(() -> row.getItem() != null && row.getItem() instanceof AdventureEnhancement, row.itemProperty()));
+					.bind(Bindings.createBooleanBinding(() -> row.getItem() != null && "Abenteuer".equals(row.getItem().getType()), row.itemProperty()));
 
 			final MenuItem undoItem = new MenuItem("Rückgängig");
 			contextMenu.getItems().add(undoItem);
-			undoItem.setOnAction(_ -> {
-				undo(row.getIndex());
-			});
+			undoItem.setOnAction(_ -> undo(table.getItems() == matches ? matchIndices.get(row.getIndex()) : row.getIndex()));
 
 			row.contextMenuProperty().bind(Bindings.when(row.itemProperty().isNotNull()).then(contextMenu).otherwise((ContextMenu) null));
 
 			return row;
 		});
 
-		final FilteredList<Enhancement> filtered = items.filtered(_ -> true);
-		table.setItems(filtered);
+		table.setItems(items);
 		GUIUtil.autosizeTable(table);
 
-		filter.textProperty().addListener((_, _, newV) -> filtered.setPredicate(i -> i.getFullDescription().toLowerCase().contains(newV.toLowerCase())));
+		filter.textProperty().addListener((_, _, _) -> applyFilter());
 	}
 
 	@Override
@@ -157,23 +192,10 @@ public class HistoryController extends EnhancementTabController {
 	}
 
 	private void undo(final int index) {
-		final JSONArray history = hero.getArr("Historie");
-		int totalAP = 0;
-		int freeAP = 0;
-		double cost = 0;
-		for (int i = 0; i <= index; ++i) {
-			final Enhancement enhancement = table.getItems().get(i);
-			if (enhancement instanceof APEnhancement || enhancement instanceof AdventureEnhancement) {
-				freeAP -= enhancement.getAP();
-				totalAP += enhancement.getAP();
-				cost -= enhancement.getCost();
-			} else {
-				freeAP += enhancement.getAP();
-				cost += enhancement.getCost();
-			}
-		}
-
-		final JSONObject bio = hero.getObj("Biografie");
+		final int from = ledger.size() - 1 - index;
+		final int totalAP = ledger.getAPGained(from, ledger.size());
+		final int freeAP = ledger.getAPSpent(from, ledger.size()) - totalAP;
+		final double cost = ledger.getSilverSpent(from, ledger.size());
 
 		String text = "Alle Steigerungen bis zur ausgewählten rückgängig machen.\nDas wird ";
 		if (index == 0) {
@@ -195,25 +217,35 @@ public class HistoryController extends EnhancementTabController {
 			text += "\n" + -cost + " Silber werden abgezogen.";
 		}
 
-		final int finalFreeAP = freeAP;
-		final double finalCost = cost;
-
 		final Alert alert = new ThemedAlert(AlertType.CONFIRMATION);
 		alert.setTitle("Steigerungen rückgängig machen");
 		alert.setHeaderText(text);
 		alert.setContentText("Sollen die Steigerungen wirklich rückgängig gemacht werden?");
 		alert.getButtonTypes().setAll(ButtonType.OK, ButtonType.CANCEL);
 		alert.showAndWait().filter(response -> response.equals(ButtonType.OK)).ifPresent(_ -> {
+			final List<HistoryEntry> undone = new ArrayList<>(index + 1);
 			for (int i = 0; i <= index; ++i) {
-				table.getItems().get(i).unapply(hero);
-				history.removeAt(history.size() - 1);
+				undone.add(items.get(i));
 			}
-			history.notifyListeners(null);
-
-			HeroUtil.addMoney(hero, (int) (finalCost * 100));
-
-			bio.put("Abenteuerpunkte-Guthaben", bio.getIntOrDefault("Abenteuerpunkte-Guthaben", 0) + finalFreeAP);
-			bio.notifyListeners(null);
+			HeroTransaction.run(hero, working -> {
+				final JSONArray history = working.getArr("Historie");
+				final List<Enhancement> enhancements = new ArrayList<>(undone.size());
+				for (final HistoryEntry entry : undone) {
+					enhancements.add(entry.toEnhancement(working));
+				}
+				for (final Enhancement enhancement : enhancements) {
+					if (enhancement != null) {
+						enhancement.unapply(working);
+					}
+					history.removeAt(history.size() - 1);
+				}
+				if (history.size() != from) throw new IllegalStateException("Historie hat " + history.size() + " statt " + from + " Einträge");
+
+				HeroUtil.addMoney(working, (int) (cost * 100));
+
+				final JSONObject bio = working.getObj("Biografie");
+				bio.put("Abenteuerpunkte-Guthaben", bio.getIntOrDefault("Abenteuerpunkte-Guthaben", 0) + freeAP);
+			});
 		});
 	}
 
@@ -224,24 +256,33 @@ public class HistoryController extends EnhancementTabController {
 
 	@Override
 	public void update() {
-		items.clear();
+		items.update(hero);
+		ledger.update(hero != null ? hero.getArr("Historie") : null);
+		searchIndexOutdated = true;
+		if (filter != null && filter.getText() != null && !filter.getText().isEmpty()) {
+			applyFilter();
+		}
+	}
 
-		final JSONArray history = hero.getArr("Historie");
-		for (int i = history.size() - 1; i >= 0; --i) {
+	/**
+	 * Adds the descriptions of new entries to the search index and drops those of entries that are gone.
+	 * The descriptions are built from the entries in "Historie", so neither rows nor enhancements are created.
+	 */
+	private void updateSearchIndex() {
+		final Set<JSONObject> current = Collections.newSetFromMap(new IdentityHashMap<>());
+		final JSONArray history = hero != null ? hero.getArr("Historie") : null;
+		for (int i = 0; history != null && i < history.size(); ++i) {
 			final JSONObject entry = history.getObj(i);
-			final Enhancement enhancement = switch (entry.getString("Typ")) {
-				case "Eigenschaft" -> AttributeEnhancement.fromJSON(entry, hero, false);
-				case "Basiswert" -> EnergyEnhancement.fromJSON(entry, hero, false);
-				case "Schlechte Eigenschaft" -> QuirkEnhancement.fromJSON(entry, hero, controller.getEnhancements(), false);
-				case "Sonderfertigkeit" -> SkillEnhancement.fromJSON(entry, hero, false);
-				case "Talent" -> TalentEnhancement.fromJSON(entry, hero, false);
-				case "Zauber" -> SpellEnhancement.fromJSON(entry, hero, false);
-				case "Weiterbildung" -> EducationEnhancement.fromJSON(entry, hero);
-				case "Abenteuerpunkte" -> APEnhancement.fromJSON(entry);
-				case "Abenteuer" -> AdventureEnhancement.fromJSON(entry);
-				default -> null;
-			};
-			items.add(enhancement);
+			current.add(entry);
+			if (!searchIndex.contains(entry)) {
+				searchIndex.add(entry, HistoryEntry.getDescription(entry));
+			}
+		}
+		for (final JSONObject key : new ArrayList<>(searchIndex.keys())) {
+			if (!current.contains(key)) {
+				searchIndex.remove(key);
+			}
 		}
+		searchIndexOutdated = false;
 	}
 }
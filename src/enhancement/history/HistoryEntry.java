@@ -0,0 +1,179 @@
+/*
+ * Copyright 2017 DSATool team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package enhancement.history;
+
+import java.time.LocalDate;
+
+import dsa41basis.util.DSAUtil;
+import dsa41basis.util.HeroUtil;
+import dsatool.resources.ResourceManager;
+import enhancement.attributes.AttributeEnhancement;
+import enhancement.attributes.EnergyEnhancement;
+import enhancement.education.EducationEnhancement;
+import enhancement.enhancements.Enhancement;
+import enhancement.pros_cons.QuirkEnhancement;
+import enhancement.skills.SkillEnhancement;
+import enhancement.talents.SpellEnhancement;
+import enhancement.talents.TalentEnhancement;
+import jsonant.value.JSONObject;
+
+/**
+ * A row of the history, read directly from its entry in "Historie".
+ * The full enhancement is only created for undoing or editing it.
+ */
+public final class HistoryEntry {
+
+	public static int getAP(final JSONObject entry) {
+		return switch (entry.getString("Typ")) {
+			case "Abenteuer" -> {
+				final JSONObject adventureAP = entry.getObj("Abenteuerpunkte");
+				yield adventureAP.getInt("Auf") - adventureAP.getInt("Von");
+			}
+			case "Abenteuerpunkte" -> entry.getInt("Auf") - entry.getInt("Von");
+			default -> entry.getIntOrDefault("AP", 0);
+		};
+	}
+
+	private static String getChoice(final JSONObject entry, final String name) {
+		if (entry.containsKey("Auswahl")) return name + ": " + entry.getString("Auswahl");
+		if (entry.containsKey("Freitext")) return name + ": " + entry.getString("Freitext");
+		return name;
+	}
+
+	public static double getCost(final JSONObject entry) {
+		return switch (entry.getString("Typ")) {
+			case "Abenteuer" -> entry.getDouble("Silber");
+			case "Abenteuerpunkte" -> 0;
+			default -> entry.getDoubleOrDefault("Kosten", 0.0);
+		};
+	}
+
+	/**
+	 * Returns the description of the entry, built from the entry alone without resolving it against the hero.
+	 * Values that depend on the hero, like the complexity of talents or the base value of energies, are left out.
+	 */
+	public static String getDescription(final JSONObject entry) {
+		final String type = entry.getString("Typ");
+		return switch (type) {
+			case "Abenteuer" -> "Abenteuer: " + entry.getStringOrDefault("Name", "Unbenanntes Abenteuer");
+			case "Abenteuerpunkte" -> "Abenteuerpunkte" + getLevels(entry);
+			case "Eigenschaft", "Basiswert" -> entry.getString(type) + getLevels(entry);
+			case "Talent" -> getChoice(entry, entry.getString("Talent")) + getLevels(entry);
+			case "Zauber" -> getChoice(entry, entry.getString("Zauber")) + " (" + entry.getString("Repräsentation") + ")" + getLevels(entry);
+			case "Sonderfertigkeit" -> getProOrCon(entry, entry.getString("Sonderfertigkeit"), HeroUtil.findSkill(entry.getString("Sonderfertigkeit")));
+			case "Schlechte Eigenschaft" -> {
+				final String name = entry.getString("Schlechte Eigenschaft");
+				yield getProOrCon(entry, name, ResourceManager.getResource("data/Nachteile").getObjOrDefault(name, null)) + getLevels(entry);
+			}
+			case "Weiterbildung", "Speziell" -> {
+				final String name = entry.getString("Art");
+				yield getProOrCon(entry, name, ResourceManager.getResource("data/Weiterbildung").getObjOrDefault(name, null));
+			}
+			default -> type;
+		};
+	}
+
+	/**
+	 * Returns the levels of the entry like "(7->8)", where talents that were not activated before are shown as "n.a."
+	 */
+	private static String getLevels(final JSONObject entry) {
+		final String from = entry.containsKey("Von") ? String.valueOf(entry.getInt("Von")) : "n.a.";
+		final String to = entry.containsKey("Auf") ? String.valueOf(entry.getInt("Auf")) : "n.a.";
+		return " (" + from + "->" + to + ")";
+	}
+
+	private static String getProOrCon(final JSONObject entry, final String name, final JSONObject proOrCon) {
+		if (proOrCon == null) return getChoice(entry, name);
+		return DSAUtil.printProOrCon(entry, name, proOrCon, false);
+	}
+
+	/**
+	 * Whether entries of this type grant AP instead of spending them
+	 */
+	public static boolean isGain(final String type) {
+		return "Abenteuerpunkte".equals(type) || "Abenteuer".equals(type);
+	}
+
+	private final JSONObject entry;
+	private final JSONObject hero;
+	private final String type;
+	private final int ap;
+	private final double cost;
+	private final String date;
+	private String fullDescription;
+
+	public HistoryEntry(final JSONObject entry, final JSONObject hero) {
+		this.entry = entry;
+		this.hero = hero;
+		type = entry.getString("Typ");
+		ap = getAP(entry);
+		cost = getCost(entry);
+		date = LocalDate.parse(entry.getString("Datum")).format(Enhancement.DateFormatter);
+	}
+
+	public int getAp() {
+		return ap;
+	}
+
+	public double getCost() {
+		return cost;
+	}
+
+	public String getDate() {
+		return date;
+	}
+
+	public JSONObject getEntry() {
+		return entry;
+	}
+
+	public String getFullDescription() {
+		if (fullDescription == null) {
+			fullDescription = getDescription(entry);
+		}
+		return fullDescription;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public boolean isGain() {
+		return isGain(type);
+	}
+
+	public Enhancement toEnhancement() {
+		return toEnhancement(hero);
+	}
+
+	/**
+	 * Creates the full enhancement of this entry for the given hero, e.g. the working copy of a transaction
+	 */
+	public Enhancement toEnhancement(final JSONObject hero) {
+		return switch (type) {
+			case "Eigenschaft" -> AttributeEnhancement.fromJSON(entry, hero, false);
+			case "Basiswert" -> EnergyEnhancement.fromJSON(entry, hero, false);
+			case "Schlechte Eigenschaft" -> QuirkEnhancement.fromJSON(entry, hero, false);
+			case "Sonderfertigkeit" -> SkillEnhancement.fromJSON(entry, hero, false);
+			case "Talent" -> TalentEnhancement.fromJSON(entry, hero, false);
+			case "Zauber" -> SpellEnhancement.fromJSON(entry, hero, false);
+			case "Weiterbildung" -> EducationEnhancement.fromJSON(entry, hero);
+			case "Abenteuerpunkte" -> APEnhancement.fromJSON(entry);
+			case "Abenteuer" -> AdventureEnhancement.fromJSON(entry);
+			default -> null;
+		};
+	}
+}
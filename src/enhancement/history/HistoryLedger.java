@@ -0,0 +1,93 @@
+/*
+ * Copyright 2017 DSATool team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package enhancement.history;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import jsonant.value.JSONArray;
+import jsonant.value.JSONObject;
+
+/**
+ * Running totals of AP gained, AP spent and silver spent over the positions of a history.
+ * The totals of any range of positions [from, to) are available in constant time.
+ */
+public class HistoryLedger {
+
+	private final List<JSONObject> entries = new ArrayList<>();
+
+	private int[] gained = new int[16];
+	private int[] spent = new int[16];
+	private double[] silver = new double[16];
+
+	private void append(final JSONObject entry) {
+		final int position = entries.size();
+		entries.add(entry);
+		if (position + 1 >= gained.length) {
+			final int capacity = gained.length * 2;
+			gained = Arrays.copyOf(gained, capacity);
+			spent = Arrays.copyOf(spent, capacity);
+			silver = Arrays.copyOf(silver, capacity);
+		}
+
+		final int ap = HistoryEntry.getAP(entry);
+		final double cost = HistoryEntry.getCost(entry);
+		if (HistoryEntry.isGain(entry.getString("Typ"))) {
+			gained[position + 1] = gained[position] + ap;
+			spent[position + 1] = spent[position];
+			silver[position + 1] = silver[position] - cost;
+		} else {
+			gained[position + 1] = gained[position];
+			spent[position + 1] = spent[position] + ap;
+			silver[position + 1] = silver[position] + cost;
+		}
+	}
+
+	public int getAPGained(final int from, final int to) {
+		return gained[to] - gained[from];
+	}
+
+	public int getAPSpent(final int from, final int to) {
+		return spent[to] - spent[from];
+	}
+
+	/**
+	 * Silver spent on teachers, reduced by the silver gained from adventures
+	 */
+	public double getSilverSpent(final int from, final int to) {
+		return silver[to] - silver[from];
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Keeps the totals of the unchanged beginning of the history and only adds up the entries after it again
+	 */
+	public void update(final JSONArray history) {
+		final int size = history != null ? history.size() : 0;
+		int common = 0;
+		while (common < size && common < entries.size() && history.getObj(common) == entries.get(common)) {
+			++common;
+		}
+		entries.subList(common, entries.size()).clear();
+		for (int i = common; i < size; ++i) {
+			append(history.getObj(i));
+		}
+	}
+}
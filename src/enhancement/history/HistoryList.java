@@ -0,0 +1,133 @@
+/*
+ * Copyright 2017 DSATool team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package enhancement.history;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javafx.collections.ObservableListBase;
+import jsonant.value.JSONArray;
+import jsonant.value.JSONObject;
+
+/**
+ * The history of a hero with the newest entry first.
+ * Rows are only created when they are requested and just the most recently used ones are kept.
+ */
+public class HistoryList extends ObservableListBase<HistoryEntry> {
+
+	private static final int CACHE_SIZE = 256;
+
+	private JSONObject hero;
+
+	private final List<JSONObject> entries = new ArrayList<>();
+	private final Map<Integer, HistoryEntry> cache = new LinkedHashMap<>(CACHE_SIZE, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<Integer, HistoryEntry> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+
+	@Override
+	public HistoryEntry get(final int index) {
+		final int position = entries.size() - 1 - index;
+		final JSONObject entry = entries.get(position);
+		HistoryEntry row = cache.get(position);
+		if (row == null || row.getEntry() != entry) {
+			row = new HistoryEntry(entry, hero);
+			cache.put(position, row);
+		}
+		return row;
+	}
+
+	/**
+	 * Rows for entries that are no longer part of the history, newest first, which are only created if a listener asks for them
+	 */
+	private List<HistoryEntry> getRemoved(final List<JSONObject> removed, final JSONObject owner) {
+		return new AbstractList<>() {
+			@Override
+			public HistoryEntry get(final int index) {
+				return new HistoryEntry(removed.get(removed.size() - 1 - index), owner);
+			}
+
+			@Override
+			public int size() {
+				return removed.size();
+			}
+		};
+	}
+
+	@Override
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Synchronizes the list with the history of the given hero.
+	 * Entries are compared by identity, so appending, undoing and replacing single entries only report those entries as changed.
+	 */
+	public void update(final JSONObject hero) {
+		final JSONObject previousHero = this.hero;
+		final boolean sameHero = hero == previousHero;
+		this.hero = hero;
+		final JSONArray history = hero != null ? hero.getArr("Historie") : null;
+		final int size = history != null ? history.size() : 0;
+		final int previous = entries.size();
+
+		int common = 0;
+		if (sameHero) {
+			while (common < size && common < previous && history.getObj(common) == entries.get(common)) {
+				++common;
+			}
+		}
+
+		if (common == size && common == previous) return;
+
+		beginChange();
+		if (sameHero && size == previous) {
+			for (int i = common; i < size; ++i) {
+				final JSONObject entry = history.getObj(i);
+				final JSONObject old = entries.get(i);
+				if (entry != old) {
+					entries.set(i, entry);
+					cache.remove(i);
+					nextSet(size - 1 - i, new HistoryEntry(old, hero));
+				}
+			}
+		} else if (sameHero && common == previous) {
+			for (int i = common; i < size; ++i) {
+				entries.add(history.getObj(i));
+			}
+			nextAdd(0, size - common);
+		} else if (sameHero && common == size) {
+			final List<JSONObject> removed = new ArrayList<>(entries.subList(size, previous));
+			entries.subList(size, previous).clear();
+			cache.keySet().removeIf(position -> position >= size);
+			nextRemove(0, getRemoved(removed, hero));
+		} else {
+			final List<JSONObject> removed = new ArrayList<>(entries);
+			entries.clear();
+			for (int i = 0; i < size; ++i) {
+				entries.add(history.getObj(i));
+			}
+			cache.clear();
+			nextReplace(0, size, getRemoved(removed, previousHero));
+		}
+		endChange();
+	}
+}
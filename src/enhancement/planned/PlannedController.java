@@ -15,17 +15,29 @@
  */
 package enhancement.planned;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
 
 import dsatool.gui.GUIUtil;
-import dsatool.resources.Settings;
+import dsatool.gui.ThemedAlert;
 import dsatool.util.ErrorLogger;
 import enhancement.attributes.AttributeEnhancement;
 import enhancement.attributes.EnergyEnhancement;
+import enhancement.enhancements.ChainPlanner;
 import enhancement.enhancements.Enhancement;
 import enhancement.enhancements.EnhancementController;
+import enhancement.enhancements.EnhancementSettings;
 import enhancement.enhancements.EnhancementTabController;
+import enhancement.enhancements.PlanOptimizer;
+import enhancement.enhancements.PlanOptimizer.Objective;
+import enhancement.enhancements.PlanOptimizer.Plan;
+import enhancement.enhancements.SearchIndex;
 import enhancement.pros_cons.QuirkEnhancement;
 import enhancement.skills.SkillEnhancement;
 import enhancement.talents.SpellEnhancement;
@@ -37,6 +49,10 @@ import javafx.collections.transformation.FilteredList;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Node;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Alert.AlertType;
+import javafx.scene.control.ButtonType;
+import javafx.scene.control.ComboBox;
 import javafx.scene.control.ContextMenu;
 import javafx.scene.control.MenuItem;
 import javafx.scene.control.TabPane;
@@ -69,11 +85,18 @@ public class PlannedController extends EnhancementTabController {
 	private TableColumn<Enhancement, Boolean> cheaperColumn;
 	@FXML
 	private TextField filter;
+	@FXML
+	private ComboBox<Objective> objective;
 
 	private final EnhancementController controller;
 
 	private final ObservableList<Enhancement> items = FXCollections.observableArrayList();
-	private final Map<Enhancement, JSONObject> itemObjectMap = new HashMap<>();
+	private final FilteredList<Enhancement> filtered = items.filtered(null);
+	private final Map<Enhancement, JSONObject> itemObjectMap = new IdentityHashMap<>();
+	private final Map<JSONObject, Enhancement> rows = new IdentityHashMap<>();
+	private final Map<Enhancement, Long> stamps = new IdentityHashMap<>();
+	private JSONObject rowsHero;
+	private final SearchIndex<JSONObject> searchIndex = new SearchIndex<>();
 
 	public PlannedController(final EnhancementController controller, final TabPane tabPane) {
 		super(tabPane);
@@ -81,11 +104,37 @@ public class PlannedController extends EnhancementTabController {
 		this.controller = controller;
 	}
 
+	private void applyFilter() {
+		final Predicate<JSONObject> matches = searchIndex.matcher(filter.getText());
+		filtered.setPredicate(i -> matches.test(itemObjectMap.get(i)));
+	}
+
+	private Enhancement createRow(final JSONObject entry) {
+		return switch (entry.getString("Typ")) {
+			case "Eigenschaft" -> AttributeEnhancement.fromJSON(entry, hero, true);
+			case "Basiswert" -> EnergyEnhancement.fromJSON(entry, hero, true);
+			case "Schlechte Eigenschaft" -> QuirkEnhancement.fromJSON(entry, hero, true);
+			case "Sonderfertigkeit" -> SkillEnhancement.fromJSON(entry, hero, true);
+			case "Talent" -> TalentEnhancement.fromJSON(entry, hero, true);
+			case "Zauber" -> SpellEnhancement.fromJSON(entry, hero, true);
+			default -> null;
+		};
+	}
+
 	@Override
 	protected Node getControl() {
 		return root;
 	}
 
+	/**
+	 * The stamp of everything the row depends on, including the value it raises
+	 */
+	private long getStamp(final Enhancement row) {
+		final Set<String> paths = new HashSet<>(row.getDependencies());
+		paths.addAll(row.getModifiedPaths());
+		return EnhancementController.instance.getStamp(hero, paths);
+	}
+
 	@Override
 	protected String getText() {
 		return "Vorgemerkt";
@@ -105,7 +154,7 @@ public class PlannedController extends EnhancementTabController {
 
 		table.prefWidthProperty().bind(root.widthProperty().subtract(20));
 
-		if (!Settings.getSettingBoolOrDefault(true, "Steigerung", "Lehrmeisterkosten")) {
+		if (!EnhancementSettings.get().teacherCosts()) {
 			costColumn.setMinWidth(0);
 			costColumn.setPrefWidth(0);
 			costColumn.setMaxWidth(0);
@@ -162,8 +211,8 @@ public class PlannedController extends EnhancementTabController {
 			applyItem.setOnAction(_ -> {
 				final Enhancement item = row.getItem();
 				hero.getArr("Vorgemerkte Steigerungen").remove(itemObjectMap.get(item));
-				items.remove(item);
-				EnhancementController.instance.addEnhancement(item.clone(hero, EnhancementController.instance.getEnhancements()));
+				removeRow(item);
+				EnhancementController.instance.enhance(List.of(item));
 			});
 
 			final MenuItem removeItem = new MenuItem("Entfernen");
@@ -171,7 +220,7 @@ public class PlannedController extends EnhancementTabController {
 			removeItem.setOnAction(_ -> {
 				final Enhancement removed = row.getItem();
 				hero.getArr("Vorgemerkte Steigerungen").remove(itemObjectMap.get(removed));
-				items.remove(removed);
+				removeRow(removed);
 			});
 
 			row.contextMenuProperty().bind(Bindings.when(row.itemProperty().isNotNull()).then(contextMenu).otherwise((ContextMenu) null));
@@ -179,11 +228,129 @@ public class PlannedController extends EnhancementTabController {
 			return row;
 		});
 
-		final FilteredList<Enhancement> filtered = items.filtered(_ -> true);
 		table.setItems(filtered);
 		GUIUtil.autosizeTable(table);
 
-		filter.textProperty().addListener((_, _, newV) -> filtered.setPredicate(i -> i.getFullDescription().toLowerCase().contains(newV.toLowerCase())));
+		filter.textProperty().addListener((_, _, _) -> applyFilter());
+
+		objective.getItems().setAll(Objective.values());
+		objective.getSelectionModel().select(Objective.COUNT);
+	}
+
+	/**
+	 * Moves the planned enhancements that are worth the most for the chosen objective and fit into the available AP to the pending enhancements
+	 */
+	@FXML
+	private void optimize() {
+		if (hero == null) return;
+
+		final JSONArray entries = hero.getArr("Vorgemerkte Steigerungen");
+		final List<Enhancement> planned = new ArrayList<>(entries.size());
+		for (int i = 0; i < entries.size(); ++i) {
+			final Enhancement row = rows.get(entries.getObj(i));
+			if (row != null) {
+				planned.add(row);
+			}
+		}
+		final Plan plan = PlanOptimizer.optimize(hero, planned, objective.getValue());
+
+		if (plan.enhancements().isEmpty()) {
+			final Alert alert = new ThemedAlert(AlertType.INFORMATION);
+			alert.setTitle("Optimieren");
+			alert.setHeaderText("Keine der vorgemerkten Steigerungen kann mit den verfügbaren AP erworben werden.");
+			alert.showAndWait();
+			return;
+		}
+
+		String text = "Die folgenden Steigerungen kosten " + plan.ap() + " AP";
+		if (EnhancementSettings.get().teacherCosts() && plan.cost() != 0) {
+			text += " und " + Math.round(plan.cost() * 100) / 100.0 + " Silber";
+		}
+		text += ".";
+		if (plan.truncated()) {
+			text += "\nEs gibt zu viele Kombinationen, das ist die beste bis zum Abbruch der Suche gefundene.";
+		}
+		final StringBuilder content = new StringBuilder();
+		for (final Enhancement enhancement : plan.enhancements()) {
+			content.append(enhancement.getFullDescription()).append('\n');
+		}
+		content.append("\nSollen die Steigerungen in dieser Reihenfolge übernommen werden?");
+
+		final Alert alert = new ThemedAlert(AlertType.CONFIRMATION);
+		alert.setTitle("Optimieren");
+		alert.setHeaderText(text);
+		alert.setContentText(content.toString());
+		alert.getButtonTypes().setAll(ButtonType.OK, ButtonType.CANCEL);
+		alert.showAndWait().filter(response -> response.equals(ButtonType.OK)).ifPresent(_ -> {
+			for (final Enhancement enhancement : plan.enhancements()) {
+				entries.remove(itemObjectMap.get(enhancement));
+				removeRow(enhancement);
+			}
+			EnhancementController.instance.enhance(plan.enhancements());
+		});
+	}
+
+	/**
+	 * Asks for goals like "Schwerter 14, KK 15, Finte" and queues or plans the enhancements that reach them with the fewest AP
+	 */
+	@FXML
+	private void plan() {
+		if (hero == null) return;
+
+		final TextField goals = new TextField();
+		goals.setPromptText("z.B. Schwerter 14, KK 15, Finte");
+		final Alert input = new ThemedAlert(AlertType.CONFIRMATION);
+		input.setTitle("Steigerungen planen");
+		input.setHeaderText("Welche Ziele sollen erreicht werden?");
+		input.getDialogPane().setContent(goals);
+		input.getButtonTypes().setAll(ButtonType.OK, ButtonType.CANCEL);
+		if (!input.showAndWait().filter(response -> response.equals(ButtonType.OK)).isPresent()) return;
+
+		final ChainPlanner.Plan plan;
+		try {
+			plan = ChainPlanner.plan(hero, goals.getText());
+		} catch (final IllegalArgumentException e) {
+			final Alert alert = new ThemedAlert(AlertType.WARNING);
+			alert.setTitle("Steigerungen planen");
+			alert.setHeaderText(e.getMessage());
+			alert.showAndWait();
+			return;
+		}
+
+		if (plan == null || plan.entries().isEmpty()) {
+			final Alert alert = new ThemedAlert(AlertType.INFORMATION);
+			alert.setTitle("Steigerungen planen");
+			alert.setHeaderText(plan == null ? "Die Ziele können in keiner Reihenfolge erreicht werden." : "Alle Ziele sind bereits erreicht.");
+			alert.showAndWait();
+			return;
+		}
+
+		final StringBuilder content = new StringBuilder();
+		for (final String description : plan.descriptions()) {
+			content.append(description).append('\n');
+		}
+
+		final ButtonType enhance = new ButtonType("Steigern");
+		final ButtonType remember = new ButtonType("Vormerken");
+		final Alert alert = new ThemedAlert(AlertType.CONFIRMATION);
+		alert.setTitle("Steigerungen planen");
+		alert.setHeaderText("Die Ziele können in dieser Reihenfolge für " + plan.ap() + " AP erreicht werden.");
+		alert.setContentText(content.toString());
+		alert.getButtonTypes().setAll(enhance, remember, ButtonType.CANCEL);
+		alert.showAndWait().ifPresent(response -> {
+			if (response.equals(enhance)) {
+				final List<Enhancement> enhancements = plan.createEnhancements(hero);
+				EnhancementController.instance.enhance(enhancements);
+				enhancements.forEach(this::unregister);
+			} else if (response.equals(remember)) {
+				final JSONArray planned = hero.getArr("Vorgemerkte Steigerungen");
+				for (final Enhancement enhancement : plan.createEnhancements(hero)) {
+					planned.add(enhancement.toJSON(planned, true));
+					unregister(enhancement);
+				}
+				planned.notifyListeners(null);
+			}
+		});
 	}
 
 	@Override
@@ -203,34 +370,107 @@ public class PlannedController extends EnhancementTabController {
 		return false;
 	}
 
+	private void removeRow(final Enhancement row) {
+		items.remove(row);
+		rows.remove(itemObjectMap.remove(row));
+		stamps.remove(row);
+		unregister(row);
+	}
+
+	private void unregister(final Enhancement row) {
+		if (row instanceof final TalentEnhancement talent) {
+			talent.unregister();
+		} else if (row instanceof final SkillEnhancement skill) {
+			skill.unregister();
+		}
+	}
+
 	@Override
 	protected void unregisterListeners() {
 		// TODO!
 		hero.getArr("Vorgemerkte Steigerungen").removeListener(heroListener);
 	}
 
+	/**
+	 * Keeps the rows of planned entries whose dependencies did not change since they were read and only reads the other entries again.
+	 * Rows are identified by their JSON entry, so planning or removing one enhancement only touches its own row.
+	 */
 	@Override
 	public void update() {
-		items.clear();
-		itemObjectMap.clear();
+		if (hero != rowsHero) {
+			items.forEach(this::unregister);
+			items.clear();
+			itemObjectMap.clear();
+			rows.clear();
+			stamps.clear();
+			rowsHero = hero;
+		}
+		if (hero == null) return;
 
 		final JSONArray planned = hero.getArr("Vorgemerkte Steigerungen");
+		final List<Enhancement> current = new ArrayList<>(planned.size());
+		final Set<JSONObject> present = Collections.newSetFromMap(new IdentityHashMap<>());
 		for (int i = planned.size() - 1; i >= 0; --i) {
 			final JSONObject entry = planned.getObj(i);
-			final Enhancement enhancement = switch (entry.getString("Typ")) {
-				case "Eigenschaft" -> AttributeEnhancement.fromJSON(entry, hero, true);
-				case "Basiswert" -> EnergyEnhancement.fromJSON(entry, hero, true);
-				case "Schlechte Eigenschaft" -> QuirkEnhancement.fromJSON(entry, hero, controller.getEnhancements(), true);
-				case "Sonderfertigkeit" -> SkillEnhancement.fromJSON(entry, hero, true);
-				case "Talent" -> TalentEnhancement.fromJSON(entry, hero, true);
-				case "Zauber" -> SpellEnhancement.fromJSON(entry, hero, true);
-				default -> null;
-			};
-			if (enhancement == null) {
-				planned.removeAt(i);
-			} else {
-				items.add(enhancement);
-				itemObjectMap.put(enhancement, entry);
+			Enhancement row = rows.get(entry);
+			if (row != null) {
+				final long stamp = getStamp(row);
+				if (stamp < 0 || stamp != stamps.get(row)) {
+					removeRow(row);
+					row = null;
+				}
+			}
+			if (row == null) {
+				row = createRow(entry);
+				if (row == null) {
+					planned.removeAt(i);
+					continue;
+				}
+				rows.put(entry, row);
+				itemObjectMap.put(row, entry);
+				stamps.put(row, getStamp(row));
+			}
+			present.add(entry);
+			current.add(row);
+		}
+
+		for (final JSONObject entry : new ArrayList<>(rows.keySet())) {
+			if (!present.contains(entry)) {
+				removeRow(rows.get(entry));
+			}
+		}
+
+		for (int i = 0; i < current.size(); ++i) {
+			final Enhancement row = current.get(i);
+			if (i >= items.size() || items.get(i) != row) {
+				if (items.contains(row)) {
+					items.setAll(current);
+					break;
+				}
+				items.add(i, row);
+			}
+		}
+
+		updateSearchIndex();
+		if (filter != null && filter.getText() != null && !filter.getText().isEmpty()) {
+			applyFilter();
+		}
+	}
+
+	/**
+	 * Adds the descriptions of new entries to the search index and drops those of entries that are gone
+	 */
+	private void updateSearchIndex() {
+		final Set<JSONObject> current = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (final Map.Entry<Enhancement, JSONObject> item : itemObjectMap.entrySet()) {
+			current.add(item.getValue());
+			if (!searchIndex.contains(item.getValue())) {
+				searchIndex.add(item.getValue(), item.getKey().getFullDescription());
+			}
+		}
+		for (final JSONObject key : new ArrayList<>(searchIndex.keys())) {
+			if (!current.contains(key)) {
+				searchIndex.remove(key);
 			}
 		}
 	}
@@ -17,12 +17,14 @@ package enhancement.pros_cons;
 
 import java.time.LocalDate;
 import java.util.Collection;
-import java.util.Stack;
+import java.util.List;
 
 import dsa41basis.hero.ProOrCon;
 import dsa41basis.util.DSAUtil;
 import dsatool.resources.ResourceManager;
 import enhancement.enhancements.Enhancement;
+import enhancement.enhancements.EnhancementController;
+import enhancement.enhancements.EnhancementSettings;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.SimpleIntegerProperty;
 import jsonant.value.JSONArray;
@@ -31,8 +33,7 @@ import jsonant.value.JSONValue;
 
 public class QuirkEnhancement extends Enhancement {
 
-	public static QuirkEnhancement fromJSON(final JSONObject enhancement, final JSONObject hero, final Collection<Enhancement> enhancements,
-			final boolean planned) {
+	public static QuirkEnhancement fromJSON(final JSONObject enhancement, final JSONObject hero, final boolean planned) {
 		final String quirkName = enhancement.getString("Schlechte Eigenschaft");
 		final JSONObject con = ResourceManager.getResource("data/Nachteile").getObj(quirkName);
 
@@ -47,7 +48,7 @@ public class QuirkEnhancement extends Enhancement {
 			newQuirk.setDescription(enhancement.getString("Freitext"), false);
 		}
 		result.start.set(enhancement.getInt("Von"));
-		result.setTarget(enhancement.getInt("Auf"), hero, enhancements);
+		result.setTarget(enhancement.getInt("Auf"), hero);
 		result.ses.set(newQuirk.getActual().getIntOrDefault("SEs", 0) + enhancement.getIntOrDefault("SEs", 0));
 		result.ap.set(enhancement.getInt("AP"));
 		if (planned) {
@@ -70,7 +71,7 @@ public class QuirkEnhancement extends Enhancement {
 		ses = new SimpleIntegerProperty(quirk.getActual().getIntOrDefault("SEs", 0));
 		target = new SimpleIntegerProperty(start.get() - 1);
 		fullDescription.bind(description);
-		cheaper.bind(ses.greaterThan(0));
+		cheaper.bind(() -> ses.get() > 0, () -> ses.greaterThan(0));
 		updateDescription();
 		recalculateValid(hero);
 	}
@@ -134,7 +135,7 @@ public class QuirkEnhancement extends Enhancement {
 	}
 
 	@Override
-	protected boolean calculateValid(final JSONObject hero) {
+	protected boolean calculateValid(final JSONObject hero, final EnhancementSettings settings) {
 		return true;
 	}
 
@@ -142,7 +143,7 @@ public class QuirkEnhancement extends Enhancement {
 	public QuirkEnhancement clone(final JSONObject hero, final Collection<Enhancement> enhancements) {
 		final QuirkEnhancement result = new QuirkEnhancement(quirk, hero);
 		result.start.set(start.get());
-		result.setTarget(target.get(), hero, enhancements);
+		result.setTarget(target.get(), hero);
 		result.ses.set(ses.get());
 		result.setCost(cost.get());
 		result.setAP(ap.get(), hero);
@@ -159,18 +160,28 @@ public class QuirkEnhancement extends Enhancement {
 	/*
 	 * (non-Javadoc)
 	 *
-	 * @see enhancement.enhancements.Enhancement#getCalculatedCost(jsonant.value.JSONObject)
+	 * @see enhancement.enhancements.Enhancement#getCalculatedCost(jsonant.value.JSONObject, enhancement.enhancements.EnhancementSettings)
 	 */
 	@Override
-	protected double getCalculatedCost(final JSONObject hero) {
+	protected double getCalculatedCost(final JSONObject hero, final EnhancementSettings settings) {
 		return 0;
 	}
 
+	@Override
+	public Collection<String> getDependencies() {
+		return List.of();
+	}
+
 	@Override
 	public String getInvalidReason(final JSONObject hero) {
 		return "";
 	}
 
+	@Override
+	public Collection<String> getModifiedPaths() {
+		return List.of("Nachteile/" + quirk.getName());
+	}
+
 	@Override
 	public String getName() {
 		return quirk.getName();
@@ -201,21 +212,12 @@ public class QuirkEnhancement extends Enhancement {
 		reset(hero);
 	}
 
-	public void setTarget(final int target, final JSONObject hero, final Collection<Enhancement> enhancements) {
-		final Stack<Enhancement> enhancementStack = new Stack<>();
-		for (final Enhancement e : enhancements) {
-			e.applyTemporarily(hero);
-			enhancementStack.push(e);
-		}
-
+	public void setTarget(final int target, final JSONObject hero) {
 		this.target.set(target);
 		updateDescription();
 		recalculateValid(hero);
 		reset(hero);
-
-		for (final Enhancement e : enhancementStack) {
-			e.unapplyTemporary(hero);
-		}
+		EnhancementController.instance.invalidatePendingHero();
 	}
 
 	public IntegerProperty startProperty() {
@@ -291,11 +293,6 @@ public class QuirkEnhancement extends Enhancement {
 		}
 	}
 
-	@Override
-	public void unapplyTemporary(final JSONObject hero) {
-		unapply(hero);
-	}
-
 	private void updateDescription() {
 		final String desc = DSAUtil.printProOrCon(quirk.getActual(), quirk.getName(), quirk.getProOrCon(), false) + " (" + start.get() + "->" + target.get()
 				+ ")";
@@ -126,7 +126,7 @@ public class QuirksController extends EnhancementTabController {
 				}));
 		targetColumn.setOnEditCommit(t -> {
 			if (t.getRowValue() != null) {
-				t.getRowValue().setTarget(t.getNewValue(), hero, EnhancementController.instance.getEnhancements());
+				t.getRowValue().setTarget(t.getNewValue(), hero);
 			}
 		});
 
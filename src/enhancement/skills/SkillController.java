@@ -16,12 +16,15 @@
 package enhancement.skills;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import dsatool.resources.ResourceManager;
 import dsatool.util.ErrorLogger;
+import enhancement.enhancements.BackgroundValidation;
 import enhancement.enhancements.Enhancement;
 import enhancement.enhancements.EnhancementController;
+import enhancement.enhancements.EnhancementSettings;
 import enhancement.enhancements.EnhancementTabController;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -30,6 +33,7 @@ import javafx.scene.control.CheckBox;
 import javafx.scene.control.ScrollPane;
 import javafx.scene.control.TabPane;
 import javafx.scene.layout.VBox;
+import jsonant.event.JSONListener;
 import jsonant.value.JSONObject;
 
 public class SkillController extends EnhancementTabController {
@@ -40,12 +44,29 @@ public class SkillController extends EnhancementTabController {
 	@FXML
 	private CheckBox showAll;
 
+	private final JSONListener listener = _ -> recalculateValid(EnhancementController.instance.getPendingHero(hero));
+
 	private final List<SkillGroupController> skillControllers = new ArrayList<>();
 
+	private final BackgroundValidation validation = new BackgroundValidation();
+
 	public SkillController(final EnhancementController controller, final TabPane tabPane) {
 		super(tabPane);
 	}
 
+	@Override
+	public boolean enhance(final Enhancement enhancement) {
+		if (enhancement instanceof final SkillEnhancement se) {
+			for (final SkillGroupController controller : skillControllers) {
+				if (controller.enhance(se)) {
+					break;
+				}
+			}
+			return true;
+		} else
+			return false;
+	}
+
 	@Override
 	protected Node getControl() {
 		return pane;
@@ -100,19 +121,47 @@ public class SkillController extends EnhancementTabController {
 	}
 
 	@Override
-	public void recalculateValid(final JSONObject hero) {
+	public void recalculate(final JSONObject hero, final Collection<String> touched) {
 		for (final SkillGroupController controller : skillControllers) {
-			controller.recalculateValid(hero);
+			controller.recalculate(hero, touched);
 		}
 	}
 
 	@Override
-	protected void registerListeners() {
-		for (final SkillGroupController controller : skillControllers) {
-			controller.registerListeners();
+	public void recalculateValid(final JSONObject hero) {
+		if (EnhancementSettings.get().background()) {
+			final List<SkillEnhancement> enhancements = new ArrayList<>();
+			for (final SkillGroupController controller : skillControllers) {
+				enhancements.addAll(controller.getItems());
+			}
+			validateInBackground(enhancements);
+		} else {
+			for (final SkillGroupController controller : skillControllers) {
+				controller.recalculateValid(hero);
+			}
+		}
+	}
+
+	@Override
+	public void recalculateValid(final JSONObject hero, final Collection<String> touched) {
+		if (EnhancementSettings.get().background()) {
+			final List<SkillEnhancement> enhancements = new ArrayList<>();
+			for (final SkillGroupController controller : skillControllers) {
+				enhancements.addAll(controller.getAffected(touched));
+			}
+			validateInBackground(enhancements);
+		} else {
+			for (final SkillGroupController controller : skillControllers) {
+				controller.recalculateValid(hero, touched);
+			}
 		}
 	}
 
+	@Override
+	protected void registerListeners() {
+		hero.getObj("Sonderfertigkeiten").addListener(listener);
+	}
+
 	@Override
 	public boolean removeEnhancement(final Enhancement enhancement) {
 		if (enhancement instanceof final SkillEnhancement se) {
@@ -128,6 +177,8 @@ public class SkillController extends EnhancementTabController {
 
 	@Override
 	protected void unregisterListeners() {
+		hero.getObj("Sonderfertigkeiten").removeListener(listener);
+		validation.cancel();
 		for (final SkillGroupController controller : skillControllers) {
 			controller.unregisterListeners();
 		}
@@ -135,8 +186,19 @@ public class SkillController extends EnhancementTabController {
 
 	@Override
 	public void update() {
+		validation.cancel();
 		for (final SkillGroupController controller : skillControllers) {
 			controller.setHero(hero);
 		}
 	}
+
+	private void validateInBackground(final List<SkillEnhancement> enhancements) {
+		if (enhancements.isEmpty()) return;
+		validation.submit(hero, enhancements, results -> {
+			final JSONObject pending = EnhancementController.instance.getPendingHero(hero);
+			for (final SkillGroupController controller : skillControllers) {
+				controller.updateVisibility(pending, results);
+			}
+		});
+	}
 }
@@ -17,17 +17,20 @@ package enhancement.skills;
 
 import java.time.LocalDate;
 import java.util.Collection;
-import java.util.Stack;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import dsa41basis.hero.ProOrCon;
 import dsa41basis.util.DSAUtil;
 import dsa41basis.util.HeroUtil;
 import dsatool.resources.ResourceManager;
-import dsatool.resources.Settings;
+import enhancement.enhancements.ChargenSubscription;
+import enhancement.enhancements.DependencyGraph;
 import enhancement.enhancements.Enhancement;
 import enhancement.enhancements.EnhancementController;
+import enhancement.enhancements.EnhancementSettings;
 import javafx.beans.property.StringProperty;
-import javafx.beans.value.ChangeListener;
 import jsonant.value.JSONArray;
 import jsonant.value.JSONObject;
 import jsonant.value.JSONValue;
@@ -80,28 +83,38 @@ public class SkillEnhancement extends Enhancement {
 	}
 
 	private final ProOrCon skill;
+	private final JSONObject hero;
 
-	private final ChangeListener<Boolean> chargenListener;
+	private ProOrCon boundSkill;
+	private JSONObject boundHero;
+
+	private final ChargenSubscription chargenSubscription;
 
 	public SkillEnhancement(final ProOrCon skill, final JSONObject hero) {
+		this(skill, hero, EnhancementController.instance.getPendingHero(hero));
+	}
+
+	public SkillEnhancement(final ProOrCon skill, final JSONObject hero, final JSONObject pending) {
 		this.skill = skill;
+		this.hero = hero;
 		description.set(skill.getDisplayName());
 		updateDescription();
 		reset(hero);
 
-		updateValid(hero);
+		recalculateValid(pending);
 
 		skill.descriptionProperty().addListener(_ -> {
+			boundSkill = null;
 			updateDescription();
 			updateValid(hero);
 		});
 		skill.variantProperty().addListener(_ -> {
+			boundSkill = null;
 			updateDescription();
 			updateValid(hero);
 		});
 
-		chargenListener = (_, _, _) -> reset(hero);
-		EnhancementController.usesChargenRules.addListener(chargenListener);
+		chargenSubscription = new ChargenSubscription(() -> reset(hero));
 	}
 
 	@Override
@@ -114,7 +127,7 @@ public class SkillEnhancement extends Enhancement {
 		final boolean hasChoice = skill.containsKey("Auswahl");
 		final boolean hasText = skill.containsKey("Freitext");
 
-		newSkill.put("Kosten", ap.getValue());
+		newSkill.put("Kosten", ap.get());
 
 		final JSONObject cheaperSkills = hero.getObj("Verbilligte Sonderfertigkeiten");
 		if (cheaperSkills.containsKey(name)) {
@@ -164,9 +177,36 @@ public class SkillEnhancement extends Enhancement {
 		applyInternal(hero);
 	}
 
+	private ProOrCon bindSkill(final JSONObject hero) {
+		if (hero == this.hero) return skill;
+		if (boundSkill == null || boundHero != hero) {
+			boundSkill = new ProOrCon(skill.getName(), hero, skill.getProOrCon(), skill.getActual().clone(null));
+			boundHero = hero;
+		}
+		return boundSkill;
+	}
+
+	private double calculateCost(final int ap, final boolean chargen, final EnhancementSettings settings) {
+		if (!settings.teacherCosts() || chargen) return 0;
+
+		final JSONObject skillData = skill.getProOrCon();
+
+		if (skillData.containsKey("Lehrmeisterkosten"))
+			return skillData.getDouble("Lehrmeisterkosten");
+
+		final JSONObject group = (JSONObject) skillData.getParent();
+		if (group == ResourceManager.getResource("data/Sonderfertigkeiten").getObj("Magische Sonderfertigkeiten") ||
+				group.getParent() == ResourceManager.getResource("data/Rituale") || group == ResourceManager.getResource("data/Schamanenrituale"))
+			return ap * settings.magicalSkillRate() / 100.0;
+		if (group == ResourceManager.getResource("data/Sonderfertigkeiten").getObj("Klerikale Sonderfertigkeiten")
+				|| group.getParent() == ResourceManager.getResource("data/Liturgien"))
+			return ap * settings.clericalSkillRate() / 100.0;
+		return ap * settings.skillRate() / 100.0;
+	}
+
 	@Override
-	protected boolean calculateValid(final JSONObject hero) {
-		return skill.getValid(false);
+	protected boolean calculateValid(final JSONObject hero, final EnhancementSettings settings) {
+		return bindSkill(hero).getValid(false);
 	}
 
 	@Override
@@ -179,37 +219,38 @@ public class SkillEnhancement extends Enhancement {
 
 	@Override
 	protected int getCalculatedAP(final JSONObject hero) {
-		cheaper.set(skill.getCost() < skill.getProOrCon().getIntOrDefault("Kosten", 0));
-		return skill.getCost();
+		final int cost = bindSkill(hero).getCost();
+		cheaper.set(cost < skill.getProOrCon().getIntOrDefault("Kosten", 0));
+		return cost;
 	}
 
 	/*
 	 * (non-Javadoc)
 	 *
-	 * @see enhancement.enhancements.Enhancement#getCalculatedCost(jsonant.value.JSONObject)
+	 * @see enhancement.enhancements.Enhancement#getCalculatedCost(jsonant.value.JSONObject, enhancement.enhancements.EnhancementSettings)
 	 */
 	@Override
-	protected double getCalculatedCost(final JSONObject hero) {
-		if (!Settings.getSettingBoolOrDefault(true, "Steigerung", "Lehrmeisterkosten") || EnhancementController.usesChargenRules.get()) return 0;
-
-		final JSONObject skillData = skill.getProOrCon();
-
-		if (skillData.containsKey("Lehrmeisterkosten"))
-			return skillData.getDouble("Lehrmeisterkosten");
+	protected double getCalculatedCost(final JSONObject hero, final EnhancementSettings settings) {
+		return calculateCost(ap.get(), EnhancementController.usesChargenRules.get(), settings);
+	}
 
-		final JSONObject group = (JSONObject) skillData.getParent();
-		if (group == ResourceManager.getResource("data/Sonderfertigkeiten").getObj("Magische Sonderfertigkeiten") ||
-				group.getParent() == ResourceManager.getResource("data/Rituale") || group == ResourceManager.getResource("data/Schamanenrituale"))
-			return ap.get() * Settings.getSettingIntOrDefault(500, "Steigerung", "Lehrmeisterkosten:Sonderfertigkeiten:Magisch") / 100.0;
-		if (group == ResourceManager.getResource("data/Sonderfertigkeiten").getObj("Klerikale Sonderfertigkeiten")
-				|| group.getParent() == ResourceManager.getResource("data/Liturgien"))
-			return ap.get() * Settings.getSettingIntOrDefault(70, "Steigerung", "Lehrmeisterkosten:Sonderfertigkeiten:Klerikal") / 100.0;
-		return ap.get() * Settings.getSettingIntOrDefault(70, "Steigerung", "Lehrmeisterkosten:Sonderfertigkeiten") / 100.0;
+	@Override
+	public Collection<String> getDependencies() {
+		final Set<String> dependencies = new HashSet<>(
+				List.of("Sonderfertigkeiten/" + skill.getName(), "Verbilligte Sonderfertigkeiten", "Vorteile", "Nachteile", "Biografie"));
+		DependencyGraph.addRequirementPaths(skill.getProOrCon().getUnsafe("Voraussetzungen"), dependencies);
+		return dependencies;
 	}
 
 	@Override
 	public String getInvalidReason(final JSONObject hero) {
-		return skill.getInvalidReason(false);
+		return bindSkill(hero).getInvalidReason(false);
+	}
+
+	@Override
+	public Collection<String> getModifiedPaths() {
+		if (skill.getProOrCon().containsKey("Effekte")) return DependencyGraph.EVERYTHING;
+		return List.of("Sonderfertigkeiten/" + skill.getName());
 	}
 
 	@Override
@@ -247,7 +288,7 @@ public class SkillEnhancement extends Enhancement {
 			result.put("Freitext", skill.getActual().getString("Freitext"));
 		}
 		result.put("AP", ap.get());
-		if (Settings.getSettingBoolOrDefault(true, "Steigerung", "Lehrmeisterkosten") && cost.get() != 0) {
+		if (EnhancementSettings.get().teacherCosts() && cost.get() != 0) {
 			result.put("Kosten", cost.get());
 		}
 		if (!planned) {
@@ -259,7 +300,7 @@ public class SkillEnhancement extends Enhancement {
 
 	@Override
 	public void unapply(final JSONObject hero) {
-		unapplyTemporary(hero);
+		unapplyInternal(hero);
 
 		final int ap = getAP();
 
@@ -290,8 +331,7 @@ public class SkillEnhancement extends Enhancement {
 		}
 	}
 
-	@Override
-	public void unapplyTemporary(final JSONObject hero) {
+	private void unapplyInternal(final JSONObject hero) {
 		final JSONObject actual = skill.getActual();
 		final JSONObject skills = hero.getObj("Sonderfertigkeiten");
 		final JSONObject skill = this.skill.getProOrCon();
@@ -319,7 +359,7 @@ public class SkillEnhancement extends Enhancement {
 	}
 
 	public void unregister() {
-		EnhancementController.usesChargenRules.removeListener(chargenListener);
+		chargenSubscription.dispose();
 	}
 
 	private void updateDescription() {
@@ -328,14 +368,6 @@ public class SkillEnhancement extends Enhancement {
 	}
 
 	private void updateValid(final JSONObject hero) {
-		final Stack<Enhancement> enhancements = new Stack<>();
-		for (final Enhancement e : EnhancementController.instance.getEnhancements()) {
-			e.applyTemporarily(hero);
-			enhancements.push(e);
-		}
-		recalculateValid(hero);
-		for (final Enhancement e : enhancements) {
-			e.unapplyTemporary(hero);
-		}
+		recalculateValid(EnhancementController.instance.getPendingHero(hero));
 	}
 }
@@ -15,25 +15,28 @@
  */
 package enhancement.skills;
 
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import dsa41basis.hero.ProOrCon;
 import dsa41basis.hero.ProOrCon.ChoiceOrTextEnum;
 import dsa41basis.util.DSAUtil;
 import dsatool.gui.GUIUtil;
-import dsatool.resources.Settings;
 import dsatool.ui.GraphicTableCell;
 import dsatool.ui.ReactiveComboBox;
 import dsatool.util.ErrorLogger;
 import dsatool.util.Util;
+import enhancement.enhancements.DependencyGraph;
 import enhancement.enhancements.EnhancementController;
-import javafx.beans.Observable;
+import enhancement.enhancements.EnhancementSettings;
 import javafx.beans.binding.Bindings;
 import javafx.beans.property.BooleanProperty;
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 import javafx.collections.ObservableSet;
 import javafx.collections.SetChangeListener;
@@ -56,7 +59,6 @@ import javafx.scene.control.TitledPane;
 import javafx.scene.control.Tooltip;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.control.cell.TextFieldTableCell;
-import jsonant.event.JSONListener;
 import jsonant.value.JSONArray;
 import jsonant.value.JSONObject;
 
@@ -86,11 +88,10 @@ public class SkillGroupController {
 	private final Set<String> alreadyEnhanced = new HashSet<>();
 
 	private final ObservableSet<SkillEnhancement> valid = FXCollections.observableSet();
-	private final ObservableList<SkillEnhancement> allItems = FXCollections.observableArrayList(_ -> new Observable[] { valid });
-
-	private final JSONListener listener = _ -> {
-		recalculateValid(hero);
-	};
+	private final ObservableList<SkillEnhancement> allItems = FXCollections.observableArrayList();
+	private final FilteredList<SkillEnhancement> visibleItems = new FilteredList<>(allItems, valid::contains);
+	private boolean batchingVisibility = false;
+	private final DependencyGraph<SkillEnhancement> dependencies = new DependencyGraph<>();
 
 	public SkillGroupController(final ScrollPane parent, final String name, final JSONObject skills, final BooleanProperty showAll) {
 		this.skills = skills;
@@ -110,7 +111,7 @@ public class SkillGroupController {
 
 		table.prefWidthProperty().bind(parent.widthProperty().subtract(17));
 
-		if (!Settings.getSettingBoolOrDefault(true, "Steigerung", "Lehrmeisterkosten")) {
+		if (!EnhancementSettings.get().teacherCosts()) {
 			costColumn.setMinWidth(0);
 			costColumn.setPrefWidth(0);
 			costColumn.setMaxWidth(0);
@@ -224,7 +225,7 @@ public class SkillGroupController {
 					row.getStyleClass().add("invalid");
 					final Tooltip tooltip = new Tooltip();
 					tooltip.setOnShowing(_ -> {
-						tooltip.setText(row.getItem().getInvalidReason(hero));
+						tooltip.setText(row.getItem().getInvalidReason(EnhancementController.instance.getPendingHero(hero)));
 					});
 					row.setTooltip(tooltip);
 				}
@@ -273,6 +274,11 @@ public class SkillGroupController {
 				planned.notifyListeners(null);
 			});
 
+			final MenuItem resolveItem = new MenuItem("Voraussetzungen erfüllen");
+			contextMenu.getItems().add(resolveItem);
+			resolveItem.setOnAction(_ -> EnhancementController.instance.resolvePrerequisites(row.getItem()));
+			contextMenu.setOnShowing(_ -> resolveItem.setVisible(row.getItem() != null && !row.getItem().isValid()));
+
 			row.contextMenuProperty().bind(Bindings.when(row.itemProperty().isNotNull()).then(contextMenu).otherwise((ContextMenu) null));
 
 			return row;
@@ -282,16 +288,30 @@ public class SkillGroupController {
 			final boolean hasItems = !valid.isEmpty();
 			pane.setVisible(hasItems);
 			pane.setManaged(hasItems);
+			if (!batchingVisibility) {
+				visibleItems.setPredicate(valid::contains);
+			}
 		});
 
 		pane.setVisible(false);
 		pane.setManaged(false);
 
-		table.setItems(new SortedList<>(new FilteredList<>(allItems, valid::contains), Comparator.comparing(SkillEnhancement::getFullDescription)));
+		allItems.addListener((final ListChangeListener.Change<? extends SkillEnhancement> change) -> {
+			while (change.next()) {
+				for (final SkillEnhancement removed : change.getRemoved()) {
+					dependencies.remove(removed);
+				}
+				for (final SkillEnhancement added : change.getAddedSubList()) {
+					dependencies.add(added, added.getDependencies());
+				}
+			}
+		});
+
+		table.setItems(new SortedList<>(visibleItems, Comparator.comparing(SkillEnhancement::getFullDescription)));
 
 		GUIUtil.autosizeTable(table);
 
-		showAll.addListener((_, _, newV) -> {
+		showAll.addListener((_, _, newV) -> batchVisibility(() -> {
 			if (newV) {
 				allItems.forEach(valid::add);
 			} else {
@@ -301,19 +321,58 @@ public class SkillGroupController {
 					}
 				});
 			}
-		});
+		}));
+	}
+
+	/**
+	 * Applies all changes to the visible items at once, so the table is only filtered again after the last one
+	 */
+	private void batchVisibility(final Runnable changes) {
+		batchingVisibility = true;
+		try {
+			changes.run();
+		} finally {
+			batchingVisibility = false;
+		}
+		visibleItems.setPredicate(valid::contains);
+	}
+
+	/**
+	 * Removes the row of the special skill and records it as learned, like the "Erlernen" action
+	 */
+	public boolean enhance(final SkillEnhancement enhancement) {
+		if (skills.containsKey(enhancement.getName())) {
+			if (enhancement.getSkill().firstChoiceOrText() == ChoiceOrTextEnum.NONE) {
+				for (final SkillEnhancement item : allItems) {
+					if (item.getName().equals(enhancement.getName())) {
+						allItems.remove(item);
+						item.unregister();
+						break;
+					}
+				}
+			}
+			alreadyEnhanced.add(enhancement.getName());
+			return true;
+		} else
+			return false;
 	}
 
 	protected void fillTable() {
+		batchVisibility(this::fillItems);
+	}
+
+	private void fillItems() {
 		valid.clear();
+		allItems.forEach(SkillEnhancement::unregister);
 		allItems.clear();
 
 		final JSONObject actual = hero.getObj("Sonderfertigkeiten");
+		final JSONObject pending = EnhancementController.instance.getPendingHero(hero);
 
 		DSAUtil.foreach(_ -> true, (skillName, skill) -> {
 			if ((!actual.containsKey(skillName) || skill.containsKey("Auswahl") || skill.containsKey("Freitext"))
 					&& !List.of("Kontakt zum Großen Geist", "Spätweihe").contains(skillName)) {
-				final SkillEnhancement newEnhancement = new SkillEnhancement(new ProOrCon(skillName, hero, skill, new JSONObject(null)), hero);
+				final SkillEnhancement newEnhancement = new SkillEnhancement(new ProOrCon(skillName, hero, skill, new JSONObject(null)), hero, pending);
 				if (skill.containsKey("Auswahl") || skill.containsKey("Freitext") || !alreadyEnhanced.contains(skillName)) {
 					if (showAll.get() || newEnhancement.isValid()) {
 						valid.add(newEnhancement);
@@ -326,32 +385,49 @@ public class SkillGroupController {
 		}, skills);
 	}
 
+	public Collection<SkillEnhancement> getAffected(final Collection<String> touched) {
+		return dependencies.getAffected(touched);
+	}
+
 	public Node getControl() {
 		return pane;
 	}
 
+	public Collection<SkillEnhancement> getItems() {
+		return allItems;
+	}
+
 	public void recalculate(final JSONObject hero) {
 		for (final SkillEnhancement enhancement : allItems) {
 			enhancement.reset(hero);
 		}
 	}
 
+	public void recalculate(final JSONObject hero, final Collection<String> touched) {
+		for (final SkillEnhancement enhancement : dependencies.getAffected(touched)) {
+			enhancement.reset(hero);
+		}
+	}
+
 	public void recalculateValid(final JSONObject hero) {
-		valid.clear();
 		final JSONObject actual = hero.getObj("Sonderfertigkeiten");
-		for (final SkillEnhancement enhancement : allItems) {
-			enhancement.recalculateValid(hero);
-			if (showAll.get() || enhancement.isValid()) {
-				final JSONObject skill = enhancement.getSkill().getProOrCon();
-				if (!actual.containsKey(enhancement.getName()) || skill.containsKey("Auswahl") || skill.containsKey("Freitext")) {
-					valid.add(enhancement);
-				}
+		batchVisibility(() -> {
+			valid.clear();
+			for (final SkillEnhancement enhancement : allItems) {
+				enhancement.recalculateValid(hero);
+				updateVisibility(enhancement, actual);
 			}
-		}
+		});
 	}
 
-	public void registerListeners() {
-		hero.getObj("Sonderfertigkeiten").addListener(listener);
+	public void recalculateValid(final JSONObject hero, final Collection<String> touched) {
+		final JSONObject actual = hero.getObj("Sonderfertigkeiten");
+		batchVisibility(() -> {
+			for (final SkillEnhancement enhancement : dependencies.getAffected(touched)) {
+				enhancement.recalculateValid(hero);
+				updateVisibility(enhancement, actual);
+			}
+		});
 	}
 
 	public boolean removeEnhancement(final SkillEnhancement enhancement) {
@@ -372,8 +448,31 @@ public class SkillGroupController {
 	}
 
 	public void unregisterListeners() {
-		hero.getObj("Sonderfertigkeiten").removeListener(listener);
-		valid.clear();
-		allItems.clear();
+		batchVisibility(() -> {
+			valid.clear();
+			allItems.forEach(SkillEnhancement::unregister);
+			allItems.clear();
+		});
+	}
+
+	public void updateVisibility(final JSONObject hero, final Map<SkillEnhancement, ?> validated) {
+		final JSONObject actual = hero.getObj("Sonderfertigkeiten");
+		batchVisibility(() -> {
+			for (final SkillEnhancement enhancement : allItems) {
+				if (validated.containsKey(enhancement)) {
+					updateVisibility(enhancement, actual);
+				}
+			}
+		});
+	}
+
+	private void updateVisibility(final SkillEnhancement enhancement, final JSONObject actual) {
+		final JSONObject skill = enhancement.getSkill().getProOrCon();
+		if ((showAll.get() || enhancement.isValid())
+				&& (!actual.containsKey(enhancement.getName()) || skill.containsKey("Auswahl") || skill.containsKey("Freitext"))) {
+			valid.add(enhancement);
+		} else {
+			valid.remove(enhancement);
+		}
 	}
 }
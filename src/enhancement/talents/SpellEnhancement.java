@@ -19,12 +19,13 @@ import java.time.LocalDate;
 import java.util.Collection;
 
 import dsa41basis.hero.Spell;
+import dsa41basis.hero.Talent;
 import dsa41basis.util.DSAUtil;
 import dsa41basis.util.HeroUtil;
 import dsatool.resources.ResourceManager;
-import dsatool.resources.Settings;
 import enhancement.enhancements.Enhancement;
 import enhancement.enhancements.EnhancementController;
+import enhancement.enhancements.EnhancementSettings;
 import jsonant.value.JSONArray;
 import jsonant.value.JSONObject;
 import jsonant.value.JSONValue;
@@ -94,6 +95,10 @@ public class SpellEnhancement extends TalentEnhancement {
 		super(spell, "Zauber", hero, fixed);
 	}
 
+	public SpellEnhancement(final Spell spell, final JSONObject hero, final JSONObject pending) {
+		super(spell, "Zauber", hero, pending, false);
+	}
+
 	@Override
 	public SpellEnhancement clone(final JSONObject hero, final Collection<Enhancement> enhancements) {
 		final SpellEnhancement result = new SpellEnhancement((Spell) talent, hero);
@@ -111,22 +116,37 @@ public class SpellEnhancement extends TalentEnhancement {
 		return result;
 	}
 
-	/*
-	 * (non-Javadoc)
-	 *
-	 * @see enhancement.enhancements.Enhancement#getCalculatedCost(jsonant.value.JSONObject)
+	@Override
+	protected int getComplexity(final JSONObject hero) {
+		return HeroUtil.getSpellComplexity(hero, talent.getActual(), talent.getName(), ((Spell) talent).getRepresentation(), target.get());
+	}
+
+	/**
+	 * The complexity of spells can change with the level, so their costs are not looked up in the talent cost tables
 	 */
 	@Override
-	protected double getCalculatedCost(final JSONObject hero) {
-		if (!Settings.getSettingBoolOrDefault(true, "Steigerung", "Lehrmeisterkosten") || !"Lehrmeister".equals(method.get())) return 0;
-		if (hasCustomAP)
-			return ap.get() * Settings.getSettingIntOrDefault(500, "Steigerung", "Lehrmeisterkosten:Zauber") / 100.0;
-		else {
-			final int SELevel = start.get() + Math.min(target.get() - start.get(), ses.get());
-			final int ap = DSAUtil.getEnhancementCost(talent, hero, "Lehrmeister", SELevel, Math.max(target.get(), SELevel),
-					EnhancementController.usesChargenRules.get());
-			return ap * Settings.getSettingIntOrDefault(500, "Steigerung", "Lehrmeisterkosten:Zauber") / 100.0;
-		}
+	protected int getEnhancementCost(final JSONObject hero, final int complexity, final String method, final int from, final int to) {
+		return DSAUtil.getEnhancementCost(talent, hero, method, from, to, EnhancementController.usesChargenRules.get());
+	}
+
+	@Override
+	protected String getPath() {
+		return "Zauber/" + talent.getName();
+	}
+
+	@Override
+	protected int getTeacherRate(final EnhancementSettings settings) {
+		return settings.spellRate();
+	}
+
+	@Override
+	protected Talent resolveTalent(final JSONObject hero) {
+		if (hero == this.hero) return talent;
+		final String name = talent.getName();
+		final String rep = ((Spell) talent).getRepresentation();
+		final JSONObject actualGroup = hero.getObj("Zauber");
+		final JSONObject actualSpell = actualGroup.getObj(name);
+		return Spell.getSpell(name, talent.getTalent(), findActual(actualSpell.getUnsafe(rep)), actualSpell, actualGroup, rep);
 	}
 
 	/*
@@ -158,7 +178,7 @@ public class SpellEnhancement extends TalentEnhancement {
 		}
 		result.put("Methode", method.get());
 		result.put("AP", ap.get());
-		if (Settings.getSettingBoolOrDefault(true, "Steigerung", "Lehrmeisterkosten") && cost.get() != 0) {
+		if (EnhancementSettings.get().teacherCosts() && cost.get() != 0) {
 			result.put("Kosten", cost.get());
 		}
 		if (!planned) {
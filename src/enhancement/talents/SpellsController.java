@@ -15,6 +15,8 @@
  */
 package enhancement.talents;
 
+import java.util.Collection;
+
 import dsa41basis.util.HeroUtil;
 import dsatool.resources.ResourceManager;
 import enhancement.enhancements.Enhancement;
@@ -61,6 +63,13 @@ public class SpellsController extends EnhancementTabController {
 		}
 	}
 
+	@Override
+	public void recalculate(final JSONObject hero, final Collection<String> touched) {
+		if (controller != null) {
+			controller.recalculate(hero, touched);
+		}
+	}
+
 	@Override
 	public void recalculateValid(final JSONObject hero) {}
 
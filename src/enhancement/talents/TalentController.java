@@ -16,6 +16,7 @@
 package enhancement.talents;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import dsa41basis.util.HeroUtil;
@@ -50,6 +51,19 @@ public class TalentController extends EnhancementTabController {
 		super(tabPane);
 	}
 
+	@Override
+	public boolean enhance(final Enhancement enhancement) {
+		if (enhancement instanceof final TalentEnhancement te && !(enhancement instanceof SpellEnhancement)) {
+			for (final TalentGroupController controller : talentControllers) {
+				if (controller.enhance(te)) {
+					break;
+				}
+			}
+			return true;
+		} else
+			return false;
+	}
+
 	@Override
 	protected Node getControl() {
 		return pane;
@@ -97,6 +111,13 @@ public class TalentController extends EnhancementTabController {
 		}
 	}
 
+	@Override
+	public void recalculate(final JSONObject hero, final Collection<String> touched) {
+		for (final TalentGroupController controller : talentControllers) {
+			controller.recalculate(hero, touched);
+		}
+	}
+
 	@Override
 	public void recalculateValid(final JSONObject hero) {}
 
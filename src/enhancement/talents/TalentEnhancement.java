@@ -17,24 +17,27 @@ package enhancement.talents;
 
 import java.time.LocalDate;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Stack;
+import java.util.Set;
 
 import dsa41basis.hero.Talent;
 import dsa41basis.util.DSAUtil;
 import dsa41basis.util.HeroUtil;
-import dsa41basis.util.RequirementsUtil;
 import dsatool.resources.ResourceManager;
-import dsatool.resources.Settings;
 import dsatool.util.StringUtil;
 import dsatool.util.Tuple;
+import enhancement.enhancements.ChargenSubscription;
+import enhancement.enhancements.CostTable;
+import enhancement.enhancements.DependencyGraph;
 import enhancement.enhancements.Enhancement;
 import enhancement.enhancements.EnhancementController;
+import enhancement.enhancements.EnhancementSettings;
+import enhancement.enhancements.LazyValue;
+import enhancement.enhancements.RequirementPredicate;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.ReadOnlyStringProperty;
-import javafx.beans.property.SimpleIntegerProperty;
-import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
 import javafx.beans.value.ChangeListener;
 import jsonant.value.JSONArray;
@@ -42,8 +45,6 @@ import jsonant.value.JSONObject;
 import jsonant.value.JSONValue;
 
 public class TalentEnhancement extends Enhancement {
-	static boolean suppressGlobally = false;
-
 	public static TalentEnhancement fromJSON(final JSONObject enhancement, final JSONObject hero, final boolean planned) {
 		final String talentName = enhancement.getString("Talent");
 		final Tuple<JSONObject, String> talentAndGroup = HeroUtil.findTalent(talentName);
@@ -125,40 +126,50 @@ public class TalentEnhancement extends Enhancement {
 
 	private boolean suppressUpdate = false;
 
-	protected final Talent talent;
-	protected final IntegerProperty start;
-	protected final StringProperty startString;
-	protected final IntegerProperty target;
-	protected final StringProperty targetString;
+	protected Talent talent;
+	protected final LazyValue.Int start;
+	protected final LazyValue.Text startString;
+	protected final LazyValue.Int target;
+	protected final LazyValue.Text targetString;
 	protected boolean basis;
 	protected final String talentGroupName;
 	protected final JSONObject hero;
-	protected final StringProperty method;
-	protected final IntegerProperty ses;
+	protected final LazyValue.Text method;
+	protected final LazyValue.Int ses;
+
+	private final ChargenSubscription chargenSubscription;
+	private ChangeListener<Number> valueListener;
+	private ChangeListener<Number> sesListener;
 
-	private final ChangeListener<Boolean> chargenListener;
+	private RequirementPredicate.Evaluation requirements;
+	private long requirementsStamp = -1;
+	private Set<String> requirementPaths;
 
 	public TalentEnhancement(final Talent talent, final String talentGroupName, final JSONObject hero) {
 		this(talent, talentGroupName, hero, false);
 	}
 
 	public TalentEnhancement(final Talent talent, final String talentGroupName, final JSONObject hero, final boolean fixed) {
+		this(talent, talentGroupName, hero, EnhancementController.instance.getPendingHero(hero), fixed);
+	}
+
+	public TalentEnhancement(final Talent talent, final String talentGroupName, final JSONObject hero, final JSONObject pending, final boolean fixed) {
 		this.talent = talent;
 		this.talentGroupName = talentGroupName;
 		this.hero = hero;
 		basis = talent.getTalent().getBoolOrDefault("Basis", false);
 		final int value = fromStart(talent.getValue());
-		startString = new SimpleStringProperty(getOfficial(value, basis));
-		start = new SimpleIntegerProperty(value);
-		target = new SimpleIntegerProperty(value + 1);
-		targetString = new SimpleStringProperty(getOfficial(value + 1, basis));
-		ses = new SimpleIntegerProperty(talent.getSes());
+		startString = new LazyValue.Text(getOfficial(value, basis));
+		start = new LazyValue.Int(value);
+		target = new LazyValue.Int(value + 1);
+		targetString = new LazyValue.Text(getOfficial(value + 1, basis));
+		ses = new LazyValue.Int(talent.getSes());
 		fullDescription.bind(description);
-		method = new SimpleStringProperty(Settings.getSettingStringOrDefault("Gegenseitiges Lehren", "Steigerung", "Lernmethode"));
+		method = new LazyValue.Text(EnhancementSettings.get().method());
 		updateDescription();
 		if (!fixed) {
-			talent.valueProperty().addListener((_, _, newV) -> {
-				if (!suppressGlobally && !suppressUpdate) {
+			valueListener = (_, _, newV) -> {
+				if (!suppressUpdate) {
 					final int newValue = fromStart(newV.intValue());
 					final int difference = start.get() - newValue;
 					start.set(newValue);
@@ -166,67 +177,47 @@ public class TalentEnhancement extends Enhancement {
 					startString.set(getOfficial(newValue, basis));
 					updateDescription();
 				}
-			});
-			talent.sesProperty().addListener((_, _, newV) -> {
-				if (!suppressGlobally && !suppressUpdate) {
+			};
+			sesListener = (_, _, newV) -> {
+				if (!suppressUpdate) {
 					ses.set(newV.intValue());
 					ap.set(getCalculatedAP(hero));
-					cost.set(getCalculatedCost(hero));
+					cost.set(getCalculatedCost(hero, EnhancementSettings.get()));
 				}
-			});
+			};
+			talent.valueProperty().addListener(valueListener);
+			talent.sesProperty().addListener(sesListener);
 		}
 
-		final Stack<Enhancement> enhancements = new Stack<>();
-		for (final Enhancement e : EnhancementController.instance.getEnhancements()) {
-			e.applyTemporarily(hero);
-			enhancements.push(e);
-		}
-		ap.set(getCalculatedAP(hero));
-		cost.set(getCalculatedCost(hero));
-		recalculateValid(hero);
-		for (final Enhancement e : enhancements) {
-			e.unapplyTemporary(hero);
-		}
+		ap.set(getCalculatedAP(pending));
+		cost.set(getCalculatedCost(pending, EnhancementSettings.get()));
+		recalculateValid(pending);
 
-		cheaper.bind(ses.greaterThan(0));
-		chargenListener = (_, _, _) -> reset(hero);
-		EnhancementController.usesChargenRules.addListener(chargenListener);
+		cheaper.bind(() -> ses.get() > 0, () -> ses.property().greaterThan(0));
+		chargenSubscription = new ChargenSubscription(() -> reset(hero));
 	}
 
 	@Override
 	public void apply(final JSONObject hero) {
 		suppressUpdate = true;
 		final int resultSes = Math.max(ses.get() - (target.get() - start.get()), 0);
-		talent.insertTalent(true);
-		talent.setValue(target.get());
-		talent.setSes(resultSes);
+		final Talent actual = resolveTalent(hero);
+		actual.insertTalent(true);
+		actual.setValue(target.get());
+		actual.setSes(resultSes);
 	}
 
 	@Override
 	public void applyTemporarily(final JSONObject hero) {
-		if (!suppressUpdate) {
-			suppressUpdate = true;
-			suppressGlobally = true;
-			talent.insertTalent(true);
-			talent.setValue(target.get());
-			suppressGlobally = false;
-			suppressUpdate = false;
-		}
+		final Talent temporary = resolveTalent(hero);
+		temporary.insertTalent(true);
+		temporary.setValue(target.get());
 	}
 
 	@Override
-	protected boolean calculateValid(final JSONObject hero) {
-		final JSONObject talent = this.talent.getTalent();
-		boolean valid = target.get() <= this.talent.getMaximum(hero);
-		if (!talent.containsKey("Voraussetzungen")) return valid;
-		final JSONArray requirements = talent.getArr("Voraussetzungen");
-		for (int i = 0; i < requirements.size(); ++i) {
-			final JSONObject requirement = requirements.getObj(i);
-			if (!requirement.containsKey("Ab") || target.get() > requirement.getInt("Ab")) {
-				valid = valid && RequirementsUtil.isRequirementFulfilled(hero, requirement, null, null, false);
-			}
-		}
-		return valid;
+	protected boolean calculateValid(final JSONObject hero, final EnhancementSettings settings) {
+		final boolean valid = target.get() <= talent.getMaximum(hero);
+		return evaluateRequirements(hero).isFulfilled() && valid;
 	}
 
 	@Override
@@ -244,6 +235,34 @@ public class TalentEnhancement extends Enhancement {
 		return result;
 	}
 
+	protected JSONObject findActual(final Object candidates) {
+		final JSONObject talentData = talent.getTalent();
+		final JSONObject own = talent.getActual();
+		final String choiceKey = talentData.containsKey("Auswahl") ? "Auswahl" : talentData.containsKey("Freitext") ? "Freitext" : null;
+		if (choiceKey == null) return (JSONObject) candidates;
+		if (own == null) return null;
+		if (candidates instanceof final JSONArray choices) {
+			for (int i = 0; i < choices.size(); ++i) {
+				final JSONObject choiceTalent = choices.getObj(i);
+				if (own.getString(choiceKey).equals(choiceTalent.getString(choiceKey))) return choiceTalent;
+			}
+		}
+		return own.clone(null);
+	}
+
+	private RequirementPredicate.Evaluation evaluateRequirements(final JSONObject hero) {
+		if (requirementPaths == null) {
+			requirementPaths = new HashSet<>();
+			DependencyGraph.addRequirementPaths(talent.getTalent().getUnsafe("Voraussetzungen"), requirementPaths);
+		}
+		final long stamp = EnhancementController.instance.getStamp(hero, requirementPaths);
+		if (requirements == null || requirements.getHero() != hero || requirements.getLevel() != target.get() || stamp < 0 || stamp != requirementsStamp) {
+			requirements = RequirementPredicate.compile(talent.getTalent().getUnsafe("Voraussetzungen")).evaluate(hero, target.get());
+			requirementsStamp = stamp;
+		}
+		return requirements;
+	}
+
 	private int fromStart(final int start) {
 		if (start == Integer.MIN_VALUE) return -1;
 		if (start < 0 && !basis) return start - 1;
@@ -255,50 +274,70 @@ public class TalentEnhancement extends Enhancement {
 		int ap = 0;
 		final String method = EnhancementController.usesChargenRules.get() ? "Gegenseitiges Lehren" : this.method.get();
 
+		final int complexity = getComplexity(hero);
 		final int SELevel = start.get() + Math.min(target.get() - start.get(), ses.get());
-		ap += DSAUtil.getEnhancementCost(talent, hero, "Lehrmeister", start.get(), Math.max(SELevel, start.get()),
-				EnhancementController.usesChargenRules.get());
-		ap += DSAUtil.getEnhancementCost(talent, hero, method, SELevel, Math.max(target.get(), SELevel),
-				EnhancementController.usesChargenRules.get());
+		ap += getEnhancementCost(hero, complexity, "Lehrmeister", start.get(), Math.max(SELevel, start.get()));
+		ap += getEnhancementCost(hero, complexity, method, SELevel, Math.max(target.get(), SELevel));
 		return ap;
 	}
 
 	/*
 	 * (non-Javadoc)
 	 *
-	 * @see enhancement.enhancements.Enhancement#getCalculatedCost(jsonant.value.JSONObject)
+	 * @see enhancement.enhancements.Enhancement#getCalculatedCost(jsonant.value.JSONObject, enhancement.enhancements.EnhancementSettings)
 	 */
 	@Override
-	protected double getCalculatedCost(final JSONObject hero) {
-		if (!Settings.getSettingBoolOrDefault(true, "Steigerung", "Lehrmeisterkosten") || !"Lehrmeister".equals(method.get())) return 0;
+	protected double getCalculatedCost(final JSONObject hero, final EnhancementSettings settings) {
+		if (!settings.teacherCosts() || !"Lehrmeister".equals(method.get())) return 0;
 		if (hasCustomAP)
-			return ap.get() * Settings.getSettingIntOrDefault(70, "Steigerung", "Lehrmeisterkosten:Talente") / 100.0;
+			return ap.get() * getTeacherRate(settings) / 100.0;
 		else {
 			final int SELevel = start.get() + Math.min(target.get() - start.get(), ses.get());
-			final int ap = DSAUtil.getEnhancementCost(talent, hero, "Lehrmeister", SELevel, Math.max(target.get(), SELevel),
-					EnhancementController.usesChargenRules.get());
-			return ap * Settings.getSettingIntOrDefault(70, "Steigerung", "Lehrmeisterkosten:Talente") / 100.0;
+			final int ap = getEnhancementCost(hero, getComplexity(hero), "Lehrmeister", SELevel, Math.max(target.get(), SELevel));
+			return ap * getTeacherRate(settings) / 100.0;
 		}
 	}
 
+	protected int getComplexity(final JSONObject hero) {
+		return HeroUtil.getTalentComplexity(hero, talent.getName());
+	}
+
+	private String getChoice() {
+		final JSONObject actual = talent.getActual();
+		if (actual == null) return null;
+		if (talent.getTalent().containsKey("Auswahl")) return actual.getString("Auswahl");
+		if (talent.getTalent().containsKey("Freitext")) return actual.getString("Freitext");
+		return null;
+	}
+
+	/**
+	 * The paths of the hero the costs from DSAUtil may depend on
+	 */
+	private List<String> getCostPaths() {
+		return List.of(getPath(), "Eigenschaften", "Vorteile", "Nachteile", "Sonderfertigkeiten", "Biografie");
+	}
+
+	@Override
+	public Collection<String> getDependencies() {
+		final Set<String> dependencies = new HashSet<>(List.of(getPath(), "Eigenschaften", "Vorteile", "Nachteile", "Sonderfertigkeiten", "Biografie"));
+		DependencyGraph.addRequirementPaths(talent.getTalent().getUnsafe("Voraussetzungen"), dependencies);
+		return dependencies;
+	}
+
+	protected int getEnhancementCost(final JSONObject hero, final int complexity, final String method, final int from, final int to) {
+		final boolean chargen = EnhancementController.usesChargenRules.get();
+		final long stamp = EnhancementController.instance.getStamp(hero, getCostPaths());
+		return CostTable.getTalentCost(talent.getTalent(), getChoice(), hero, stamp, complexity, method, chargen, basis, from, to,
+				(stepFrom, stepTo) -> DSAUtil.getEnhancementCost(talent, hero, method, stepFrom, stepTo, chargen));
+	}
+
 	@Override
 	public String getInvalidReason(final JSONObject hero) {
 		final List<String> unfulfilled = new LinkedList<>();
-		final JSONObject talent = this.talent.getTalent();
-		if (target.get() > this.talent.getMaximum(hero)) {
-			unfulfilled.add("Talentmaximum " + getName() + ' ' + this.talent.getMaximum(hero));
-		}
-		if (talent.containsKey("Voraussetzungen")) {
-			final JSONArray requirements = talent.getArr("Voraussetzungen");
-			for (int i = 0; i < requirements.size(); ++i) {
-				final JSONObject requirement = requirements.getObj(i);
-				if (!requirement.containsKey("Ab") || target.get() > requirement.getInt("Ab")) {
-					if (!RequirementsUtil.isRequirementFulfilled(hero, requirement, null, null, false)) {
-						unfulfilled.add(RequirementsUtil.unfulfilledRequirements(hero, requirement, null, null, false));
-					}
-				}
-			}
+		if (target.get() > talent.getMaximum(hero)) {
+			unfulfilled.add("Talentmaximum " + getName() + ' ' + talent.getMaximum(hero));
 		}
+		unfulfilled.addAll(evaluateRequirements(hero).getUnfulfilled());
 		return StringUtil.mkString(unfulfilled, "\n");
 	}
 
@@ -306,11 +345,20 @@ public class TalentEnhancement extends Enhancement {
 		return method.get();
 	}
 
+	@Override
+	public Collection<String> getModifiedPaths() {
+		return List.of(getPath());
+	}
+
 	@Override
 	public String getName() {
 		return talent.getName();
 	}
 
+	protected String getPath() {
+		return "Talente/" + talentGroupName + '/' + talent.getName();
+	}
+
 	public int getSes() {
 		return ses.get();
 	}
@@ -327,16 +375,60 @@ public class TalentEnhancement extends Enhancement {
 		return target.get();
 	}
 
+	protected int getTeacherRate(final EnhancementSettings settings) {
+		return settings.talentRate();
+	}
+
 	public boolean isBasis() {
 		return basis;
 	}
 
 	public StringProperty methodProperty() {
-		return method;
+		return method.property();
+	}
+
+	/**
+	 * Switches to the current state of the same talent and only recalculates if its value or SEs changed
+	 *
+	 * @return Whether the value or SEs of the talent changed
+	 */
+	public boolean refresh(final Talent current, final JSONObject pending) {
+		final boolean changed = current.getValue() != talent.getValue() || current.getSes() != talent.getSes();
+		if (valueListener != null) {
+			talent.valueProperty().removeListener(valueListener);
+			talent.sesProperty().removeListener(sesListener);
+			current.valueProperty().addListener(valueListener);
+			current.sesProperty().addListener(sesListener);
+		}
+		talent = current;
+		if (!changed) return false;
+
+		final int value = fromStart(current.getValue());
+		final int difference = start.get() - value;
+		start.set(value);
+		startString.set(getOfficial(value, basis));
+		ses.set(current.getSes());
+		target.set(Math.max(target.get() - difference, value + 1));
+		targetString.set(getOfficial(target.get(), basis));
+		updateDescription();
+		recalculateValid(pending);
+		reset(pending);
+		return true;
+	}
+
+	protected Talent resolveTalent(final JSONObject hero) {
+		if (hero == this.hero) return talent;
+		final String name = talent.getName();
+		final JSONObject actualGroup = hero.getObj("Talente").getObj(talentGroupName);
+		JSONObject talentGroup = ResourceManager.getResource("data/Talentgruppen").getObj(talentGroupName);
+		if ("Sprachen und Schriften".equals(talentGroupName)) {
+			talentGroup = talentGroup.getObj(talent.getTalent().getBoolOrDefault("Schrift", false) ? "Schriften" : "Sprachen");
+		}
+		return Talent.getTalent(name, talentGroup, talent.getTalent(), hero, findActual(actualGroup.getUnsafe(name)), actualGroup);
 	}
 
 	public IntegerProperty sesProperty() {
-		return ses;
+		return ses.property();
 	}
 
 	public void setMethod(final String method, final JSONObject hero) {
@@ -350,25 +442,16 @@ public class TalentEnhancement extends Enhancement {
 	}
 
 	public void setTarget(final int target, final JSONObject hero, final boolean updateValid) {
-		final Stack<Enhancement> enhancementStack = new Stack<>();
-		if (updateValid) {
-			for (final Enhancement e : EnhancementController.instance.getEnhancements()) {
-				e.applyTemporarily(hero);
-				enhancementStack.push(e);
-			}
-		}
+		final JSONObject pending = updateValid ? EnhancementController.instance.getPendingHero(hero) : hero;
 
 		this.target.set(target);
 		targetString.set(getOfficial(target, basis));
 		updateDescription();
 
 		if (updateValid) {
-			recalculateValid(hero);
-			reset(hero);
-
-			for (final Enhancement e : enhancementStack) {
-				e.unapplyTemporary(hero);
-			}
+			recalculateValid(pending);
+			reset(pending);
+			EnhancementController.instance.invalidatePendingHero();
 		}
 	}
 
@@ -377,19 +460,19 @@ public class TalentEnhancement extends Enhancement {
 	}
 
 	public IntegerProperty startProperty() {
-		return start;
+		return start.property();
 	}
 
 	public ReadOnlyStringProperty startStringProperty() {
-		return startString;
+		return startString.property();
 	}
 
 	public IntegerProperty targetProperty() {
-		return target;
+		return target.property();
 	}
 
 	public ReadOnlyStringProperty targetStringProperty() {
-		return targetString;
+		return targetString.property();
 	}
 
 	/*
@@ -420,7 +503,7 @@ public class TalentEnhancement extends Enhancement {
 		}
 		result.put("Methode", method.get());
 		result.put("AP", ap.get());
-		if (Settings.getSettingBoolOrDefault(true, "Steigerung", "Lehrmeisterkosten") && cost.get() != 0) {
+		if (EnhancementSettings.get().teacherCosts() && cost.get() != 0) {
 			result.put("Kosten", cost.get());
 		}
 		if (!planned) {
@@ -451,15 +534,8 @@ public class TalentEnhancement extends Enhancement {
 		}
 	}
 
-	@Override
-	public void unapplyTemporary(final JSONObject hero) {
-		suppressGlobally = true;
-		unapply(hero);
-		suppressGlobally = false;
-	}
-
 	public void unregister() {
-		EnhancementController.usesChargenRules.removeListener(chargenListener);
+		chargenSubscription.dispose();
 	}
 
 	protected void updateDescription() {
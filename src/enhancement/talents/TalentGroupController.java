@@ -15,19 +15,22 @@
  */
 package enhancement.talents;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 
 import dsa41basis.hero.Spell;
 import dsa41basis.hero.Talent;
 import dsa41basis.util.DSAUtil;
 import dsatool.gui.GUIUtil;
 import dsatool.resources.ResourceManager;
-import dsatool.resources.Settings;
 import dsatool.ui.GraphicTableCell;
 import dsatool.ui.IntegerSpinnerTableCell;
 import dsatool.ui.ReactiveComboBoxTableCell;
@@ -35,10 +38,13 @@ import dsatool.ui.ReactiveSpinner;
 import dsatool.util.ErrorLogger;
 import dsatool.util.Tuple;
 import dsatool.util.Util;
+import enhancement.enhancements.DependencyGraph;
 import enhancement.enhancements.EnhancementController;
+import enhancement.enhancements.EnhancementSettings;
 import javafx.beans.binding.Bindings;
 import javafx.beans.value.ChangeListener;
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Node;
@@ -53,7 +59,6 @@ import javafx.scene.control.TitledPane;
 import javafx.scene.control.Tooltip;
 import javafx.scene.control.cell.TextFieldTableCell;
 import javafx.scene.layout.Region;
-import jsonant.event.JSONListener;
 import jsonant.value.JSONArray;
 import jsonant.value.JSONObject;
 
@@ -92,10 +97,10 @@ public class TalentGroupController {
 	private final String talentGroupName;
 	protected JSONObject hero;
 	private final Map<String, Map<Talent, Object>> alreadyEnhanced = new HashMap<>();
+	private final DependencyGraph<TalentEnhancement> dependencies = new DependencyGraph<>();
 
-	private final JSONListener listener = _ -> {
-		fillTable();
-	};
+	private final Runnable refill = this::fillTable;
+	private String listenedPath;
 
 	public TalentGroupController(final String name, final JSONObject talents) {
 		this.talents = talents;
@@ -126,12 +131,22 @@ public class TalentGroupController {
 
 		table.prefWidthProperty().bind(pane.widthProperty().subtract(2));
 		table.getSortOrder().add(nameColumn);
+		table.getItems().addListener((final ListChangeListener.Change<? extends TalentEnhancement> change) -> {
+			while (change.next()) {
+				for (final TalentEnhancement removed : change.getRemoved()) {
+					dependencies.remove(removed);
+				}
+				for (final TalentEnhancement added : change.getAddedSubList()) {
+					dependencies.add(added, added.getDependencies());
+				}
+			}
+		});
 
 		if ("Zauber".equals(name)) {
 			nameColumn.setText("Zauber");
 		}
 
-		if (!Settings.getSettingBoolOrDefault(true, "Steigerung", "Lehrmeisterkosten")) {
+		if (!EnhancementSettings.get().teacherCosts()) {
 			costColumn.setMinWidth(0);
 			costColumn.setPrefWidth(0);
 			costColumn.setMaxWidth(0);
@@ -243,6 +258,11 @@ public class TalentGroupController {
 				planned.notifyListeners(null);
 			});
 
+			final MenuItem resolveItem = new MenuItem("Voraussetzungen erfüllen");
+			contextMenu.getItems().add(resolveItem);
+			resolveItem.setOnAction(_ -> EnhancementController.instance.resolvePrerequisites(row.getItem()));
+			contextMenu.setOnShowing(_ -> resolveItem.setVisible(row.getItem() != null && !row.getItem().isValid()));
+
 			row.contextMenuProperty().bind(Bindings.when(row.itemProperty().isNotNull()).then(contextMenu).otherwise((ContextMenu) null));
 
 			return row;
@@ -261,7 +281,7 @@ public class TalentGroupController {
 					row.getStyleClass().add("invalid");
 					final Tooltip tooltip = new Tooltip();
 					tooltip.setOnShowing(_ -> {
-						tooltip.setText(row.getItem().getInvalidReason(hero));
+						tooltip.setText(row.getItem().getInvalidReason(EnhancementController.instance.getPendingHero(hero)));
 					});
 					row.setTooltip(tooltip);
 				}
@@ -345,15 +365,66 @@ public class TalentGroupController {
 		table.sort();
 	}
 
+	private TalentEnhancement createEnhancement(final Talent talent, final JSONObject pending) {
+		if ("Zauber".equals(talentGroupName)) return new SpellEnhancement((Spell) talent, hero, pending);
+		return new TalentEnhancement(talent, talentGroupName, hero, pending, false);
+	}
+
+	/**
+	 * Removes the row of the talent and records it as enhanced, like the "Steigern" action
+	 */
+	public boolean enhance(final TalentEnhancement enhancement) {
+		if (enhancement.talentGroupName.equals(talentGroupName)) {
+			final String key = getKey(enhancement.getTalent());
+			Talent talent = enhancement.getTalent();
+			for (final TalentEnhancement item : table.getItems()) {
+				if (getKey(item.getTalent()).equals(key)) {
+					talent = item.getTalent();
+					table.getItems().remove(item);
+					item.unregister();
+					break;
+				}
+			}
+			alreadyEnhanced.computeIfAbsent(enhancement.getName(), _ -> new IdentityHashMap<>()).put(talent, null);
+			return true;
+		} else
+			return false;
+	}
+
+	/**
+	 * Keeps the rows of talents that are still present and only recalculates those whose value or SEs changed,
+	 * so a refresh neither resets the scroll position nor rebuilds the whole group
+	 */
 	protected void fillTable() {
 		final JSONObject actualGroup = "Zauber".equals(talentGroupName) ? hero.getObj("Zauber") : hero.getObj("Talente").getObj(talentGroupName);
-		if (TalentEnhancement.suppressGlobally) return;
 
 		talentsList.getItems().clear();
-		table.getItems().forEach(TalentEnhancement::unregister);
-		table.getItems().clear();
 
 		final JSONObject talentGroups = ResourceManager.getResource("data/Talentgruppen");
+		final JSONObject pending = EnhancementController.instance.getPendingHero(hero);
+
+		final Map<String, TalentEnhancement> existing = new HashMap<>();
+		final Set<TalentEnhancement> stale = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (final TalentEnhancement row : table.getItems()) {
+			final TalentEnhancement duplicate = existing.put(getKey(row.getTalent()), row);
+			if (duplicate != null) {
+				stale.add(duplicate);
+			}
+		}
+		final List<TalentEnhancement> added = new ArrayList<>();
+		final boolean[] changed = { false };
+
+		final Consumer<Talent> keep = talent -> {
+			final TalentEnhancement row = existing.remove(getKey(talent));
+			if (row != null && row.getTalent().getActual() == talent.getActual()) {
+				changed[0] |= row.refresh(talent, pending);
+			} else {
+				if (row != null) {
+					stale.add(row);
+				}
+				added.add(createEnhancement(talent, pending));
+			}
+		};
 
 		DSAUtil.foreach(_ -> true, (talentName, talent) -> {
 			if (actualGroup.containsKey(talentName)) {
@@ -365,12 +436,11 @@ public class TalentGroupController {
 							for (int i = 0; i < choiceTalent.size(); ++i) {
 								final Spell spell = Spell.getSpell(talentName, talent, choiceTalent.getObj(i), actualSpell, actualGroup, rep);
 								if (!alreadyEnhanced.containsKey(talentName) || !alreadyEnhanced.get(talentName).containsKey(spell)) {
-									table.getItems().add(new SpellEnhancement(spell, hero));
+									keep.accept(spell);
 								}
 							}
 						} else if (!alreadyEnhanced.containsKey(talentName)) {
-							table.getItems().add(
-									new SpellEnhancement(Spell.getSpell(talentName, talent, actualSpell.getObj(rep), actualSpell, actualGroup, rep), hero));
+							keep.accept(Spell.getSpell(talentName, talent, actualSpell.getObj(rep), actualSpell, actualGroup, rep));
 						}
 					}
 					if (talent.getObj("Repräsentationen").keySet().stream().anyMatch(rep -> !actualSpell.containsKey(rep))) {
@@ -387,14 +457,13 @@ public class TalentGroupController {
 							final Talent actualTalent = Talent.getTalent(talentName, talentGroup, talents.getObj(talentName), hero, choiceTalent.getObj(i),
 									actualGroup);
 							if (!alreadyEnhanced.containsKey(talentName) || !alreadyEnhanced.get(talentName).containsKey(actualTalent)) {
-								table.getItems().add(new TalentEnhancement(actualTalent, talentGroupName, hero));
+								keep.accept(actualTalent);
 							}
 						}
 						talentsList.getItems().add(talentName);
 					} else if (!alreadyEnhanced.containsKey(talentName)) {
-						table.getItems().add(new TalentEnhancement(
-								Talent.getTalent(talentName, talentGroup, talents.getObj(talentName), hero, actualGroup.getObj(talentName), actualGroup),
-								talentGroupName, hero));
+						keep.accept(
+								Talent.getTalent(talentName, talentGroup, talents.getObj(talentName), hero, actualGroup.getObj(talentName), actualGroup));
 					}
 				}
 			} else if (talent.containsKey("Auswahl") || talent.containsKey("Freitext") || !alreadyEnhanced.containsKey(talentName)) {
@@ -402,6 +471,13 @@ public class TalentGroupController {
 			}
 		}, talents);
 
+		stale.addAll(existing.values());
+		if (!stale.isEmpty()) {
+			table.getItems().removeIf(stale::contains);
+			stale.forEach(TalentEnhancement::unregister);
+		}
+		table.getItems().addAll(added);
+
 		if (talentsList.getItems().size() > 0) {
 			talentsList.getSelectionModel().select(0);
 			addButton.setDisable(false);
@@ -409,27 +485,54 @@ public class TalentGroupController {
 			addButton.setDisable(true);
 		}
 
-		table.sort();
+		if (changed[0] || !added.isEmpty()) {
+			table.sort();
+		}
 	}
 
 	public Node getControl() {
 		return pane;
 	}
 
+	private String getKey(final Talent talent) {
+		final StringBuilder key = new StringBuilder(talent.getName());
+		if (talent instanceof final Spell spell) {
+			key.append('/').append(spell.getRepresentation());
+		}
+		final JSONObject actual = talent.getActual();
+		if (actual != null) {
+			final JSONObject talentData = talent.getTalent();
+			if (talentData.containsKey("Auswahl")) {
+				key.append('/').append(actual.getStringOrDefault("Auswahl", ""));
+			} else if (talentData.containsKey("Freitext")) {
+				key.append('/').append(actual.getStringOrDefault("Freitext", ""));
+			}
+		}
+		return key.toString();
+	}
+
+	private String getListenedPath() {
+		if ("Zauber".equals(talentGroupName)) return hero.containsKey("Zauber") ? "Zauber" : "Talente";
+		return "Talente/" + talentGroupName;
+	}
+
 	public void recalculate(final JSONObject hero) {
 		for (final TalentEnhancement enhancement : table.getItems().toArray(new TalentEnhancement[] {})) {
 			enhancement.reset(hero);
 		}
 	}
 
-	public void registerListeners() {
-		if ("Zauber".equals(talentGroupName) && hero.containsKey("Zauber")) {
-			hero.getObj("Zauber").addListener(listener);
-		} else {
-			hero.getObj("Talente").addListener(listener);
+	public void recalculate(final JSONObject hero, final Collection<String> touched) {
+		for (final TalentEnhancement enhancement : dependencies.getAffected(touched)) {
+			enhancement.reset(hero);
 		}
 	}
 
+	public void registerListeners() {
+		listenedPath = getListenedPath();
+		EnhancementController.instance.getChangeDispatcher().subscribe(listenedPath, refill);
+	}
+
 	public boolean removeEnhancement(final TalentEnhancement enhancement) {
 		if (enhancement.talentGroupName.equals(talentGroupName)) {
 			final Map<Talent, Object> enhanced = alreadyEnhanced.get(enhancement.getName());
@@ -455,10 +558,9 @@ public class TalentGroupController {
 	}
 
 	public void unregisterListeners() {
-		if ("Zauber".equals(talentGroupName) && hero.containsKey("Zauber")) {
-			hero.getObj("Zauber").removeListener(listener);
-		} else {
-			hero.getObj("Talente").removeListener(listener);
+		if (listenedPath != null) {
+			EnhancementController.instance.getChangeDispatcher().unsubscribe(listenedPath, refill);
+			listenedPath = null;
 		}
 		talentsList.getItems().clear();
 		table.getItems().forEach(TalentEnhancement::unregister);